@@ -0,0 +1,66 @@
+package a2;
+
+import java.util.*;
+
+/**
+ * The available allocators, so that a caller can choose one by name (for
+ * example per instance in a batch).
+ */
+
+public enum Allocator {
+
+	NAIVE {
+		@Override
+		public boolean canAllocate(List<Donation> donations,
+				Set<Project> projects) {
+			return NaiveAllocator.canAllocate(donations, projects);
+		}
+	},
+	NAIVE_EXACT {
+		@Override
+		public boolean canAllocate(List<Donation> donations,
+				Set<Project> projects) {
+			return NaiveAllocator.canAllocateExact(donations, projects);
+		}
+	},
+	ITERATIVE {
+		@Override
+		public boolean canAllocate(List<Donation> donations,
+				Set<Project> projects) {
+			return IterativeAllocator.canAllocate(donations, projects);
+		}
+	},
+	PUSH_RELABEL {
+		@Override
+		public boolean canAllocate(List<Donation> donations,
+				Set<Project> projects) {
+			return PushRelabelAllocator.canAllocate(donations, projects);
+		}
+	},
+	COLUMNAR {
+		@Override
+		public boolean canAllocate(List<Donation> donations,
+				Set<Project> projects) {
+			return ColumnarInstance.canAllocate(donations, projects);
+		}
+	};
+
+	/**
+	 * @precondition: as for IterativeAllocator.canAllocate
+	 * @postcondition: as for IterativeAllocator.canAllocate, using this
+	 *                 allocator.
+	 */
+	public abstract boolean canAllocate(List<Donation> donations,
+			Set<Project> projects);
+
+	/**
+	 * @precondition: name != null
+	 * @postcondition: returns the allocator with the given name, ignoring case
+	 *                 and treating '-' as '_' (so "push-relabel" names
+	 *                 PUSH_RELABEL). Throws IllegalArgumentException if there
+	 *                 is no such allocator.
+	 */
+	public static Allocator forName(String name) {
+		return valueOf(name.trim().toUpperCase(Locale.ROOT).replace('-', '_'));
+	}
+}
@@ -0,0 +1,280 @@
+package a2;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * A long-running command line runner that solves a stream of instances (in
+ * the format read by Instance.read) concurrently in one JVM, so that start-up
+ * and JIT warm-up are paid once rather than per instance.
+ *
+ * Usage: java a2.BatchRunner [-threads N] [-allocator NAME] [FILE...]
+ *
+ * Each FILE may hold any number of instances; "-" (or no FILE at all) reads
+ * instances from standard input. One line is written to standard output for
+ * each instance as soon as it has been solved:
+ *
+ * 	NAME	ALLOCATOR	true|false	MICROSECONDS
+ *
+ * and a summary of throughput and latency percentiles is written to standard
+ * error at the end. An instance that is malformed is reported on standard
+ * error and skipped (up to its "end" line), and the runner then exits with
+ * status 1.
+ */
+
+public class BatchRunner {
+
+	// number of instances in flight per worker thread
+	private static final int QUEUE_DEPTH = 4;
+
+	// allocator for instances that don't name one
+	private Allocator allocator;
+	// solves the instances
+	private ExecutorService executor;
+	// delivers the results in the order they finish
+	private CompletionService<Result> results;
+	// writes out the results as they finish
+	private Thread reporter;
+	// where the result lines are written
+	private PrintStream out;
+	// maximum number of instances in flight
+	private int capacity;
+	// one permit for each instance that may still be put in flight
+	private Semaphore slots;
+	// solve times of the instances, in nanoseconds
+	private List<Long> latencies;
+	// number of instances that could not be read or solved
+	private int failures;
+
+	/*
+	 * invariant: latencies and failures are only accessed while holding the
+	 * lock on this runner, since they are updated by the reporter thread
+	 */
+
+	/**
+	 * The outcome of solving one instance.
+	 */
+	private static class Result {
+		String name;
+		Allocator allocator;
+		boolean allocated;
+		long nanos;
+	}
+
+	/**
+	 * @precondition: threads > 0 && allocator != null && out != null
+	 * @postcondition: creates a runner that solves instances on the given
+	 *                 number of threads, using allocator for any instance that
+	 *                 doesn't name its own, and writes results to out as soon
+	 *                 as they are solved.
+	 */
+	public BatchRunner(int threads, Allocator allocator, PrintStream out) {
+		assert threads > 0 && allocator != null && out != null;
+		this.allocator = allocator;
+		this.out = out;
+		executor = Executors.newFixedThreadPool(threads);
+		results = new ExecutorCompletionService<Result>(executor);
+		capacity = threads * QUEUE_DEPTH;
+		slots = new Semaphore(capacity);
+		latencies = new ArrayList<Long>();
+		reporter = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					while (true) {
+						report(results.take());
+						slots.release();
+					}
+				} catch (InterruptedException e) {
+					// stopped by finish
+				}
+			}
+		}, "BatchRunner-reporter");
+		reporter.setDaemon(true);
+		reporter.start();
+	}
+
+	/**
+	 * @precondition: instance != null
+	 * @postcondition: queues the instance to be solved, first waiting while
+	 *                 too many instances are in flight.
+	 */
+	public void submit(final Instance instance) throws InterruptedException {
+		slots.acquire();
+		results.submit(new Callable<Result>() {
+			@Override
+			public Result call() {
+				Result result = new Result();
+				result.name = instance.getName();
+				result.allocator = instance.getAllocator() == null ? allocator
+						: instance.getAllocator();
+				long start = System.nanoTime();
+				result.allocated = instance.solve(allocator);
+				result.nanos = System.nanoTime() - start;
+				return result;
+			}
+		});
+	}
+
+	/**
+	 * @precondition: message != null
+	 * @postcondition: counts an instance that could not be read as a failure,
+	 *                 writing message to standard error.
+	 */
+	public synchronized void fail(String message) {
+		failures++;
+		System.err.println("failed: " + message);
+	}
+
+	/**
+	 * @postcondition: waits for every queued instance to be solved and its
+	 *                 result written out, then stops the worker and reporter
+	 *                 threads.
+	 */
+	public void finish() throws InterruptedException {
+		// every permit is back once the last result has been reported
+		slots.acquire(capacity);
+		slots.release(capacity);
+		executor.shutdown();
+		reporter.interrupt();
+		reporter.join();
+	}
+
+	/**
+	 * writes out the result of a finished instance
+	 */
+	private synchronized void report(Future<Result> done)
+			throws InterruptedException {
+		try {
+			Result result = done.get();
+			latencies.add(result.nanos);
+			out.println(result.name + "\t" + result.allocator + "\t"
+					+ result.allocated + "\t" + result.nanos / 1000);
+			out.flush();
+		} catch (ExecutionException e) {
+			failures++;
+			System.err.println("failed: " + e.getCause());
+		}
+	}
+
+	/**
+	 * @postcondition: returns the number of instances solved so far.
+	 */
+	public synchronized int solved() {
+		return latencies.size();
+	}
+
+	/**
+	 * @postcondition: returns the number of instances that could not be read,
+	 *                 or whose allocator threw an exception.
+	 */
+	public synchronized int failures() {
+		return failures;
+	}
+
+	/**
+	 * @precondition: 0 <= p <= 100
+	 * @postcondition: returns the p-th percentile of the solve times so far in
+	 *                 nanoseconds, or 0 if nothing has been solved.
+	 */
+	public synchronized long percentile(double p) {
+		assert 0 <= p && p <= 100;
+		if (latencies.isEmpty()) {
+			return 0;
+		}
+		List<Long> sorted = new ArrayList<Long>(latencies);
+		Collections.sort(sorted);
+		int rank = (int) Math.ceil(p / 100 * sorted.size());
+		return sorted.get(Math.max(rank - 1, 0));
+	}
+
+	/**
+	 * @precondition: in != null && source != null
+	 * @postcondition: reads every instance from in and submits it, naming
+	 *                 those without a name after source. An instance that is
+	 *                 malformed is counted as a failure and skipped, up to its
+	 *                 "end" line. Throws an IOException only if in can't be
+	 *                 read.
+	 */
+	public void submitAll(BufferedReader in, String source)
+			throws IOException, InterruptedException {
+		int count = 0;
+		while (true) {
+			Instance instance;
+			try {
+				instance = Instance.read(in, source + "#" + count);
+			} catch (IOException e) {
+				fail(source + "#" + count + ": " + e.getMessage());
+				skipInstance(in);
+				count++;
+				continue;
+			}
+			if (instance == null) {
+				return;
+			}
+			submit(instance);
+			count++;
+		}
+	}
+
+	/**
+	 * reads lines from in up to and including the next "end" line
+	 */
+	private static void skipInstance(BufferedReader in) throws IOException {
+		String line;
+		while ((line = in.readLine()) != null && !line.trim().equals("end")) {
+		}
+	}
+
+	public static void main(String[] args) throws InterruptedException {
+		int threads = Runtime.getRuntime().availableProcessors();
+		Allocator allocator = Allocator.PUSH_RELABEL;
+		List<String> files = new ArrayList<String>();
+		for (int i = 0; i < args.length; i++) {
+			if (args[i].equals("-threads") && i + 1 < args.length) {
+				threads = Integer.parseInt(args[++i]);
+			} else if (args[i].equals("-allocator") && i + 1 < args.length) {
+				allocator = Allocator.forName(args[++i]);
+			} else {
+				files.add(args[i]);
+			}
+		}
+		if (files.isEmpty()) {
+			files.add("-");
+		}
+
+		BatchRunner runner = new BatchRunner(threads, allocator, System.out);
+		long start = System.nanoTime();
+		for (String file : files) {
+			try {
+				BufferedReader in = new BufferedReader(file.equals("-")
+						? new InputStreamReader(System.in)
+						: new FileReader(file));
+				try {
+					runner.submitAll(in, file);
+				} finally {
+					in.close();
+				}
+			} catch (IOException e) {
+				runner.fail(file + ": " + e.getMessage());
+			}
+		}
+		runner.finish();
+		double seconds = (System.nanoTime() - start) / 1e9;
+
+		System.out.flush();
+		System.err.printf(
+				"instances: %d, failures: %d, elapsed: %.3f s, "
+						+ "throughput: %.1f instances/s%n",
+				runner.solved(), runner.failures(), seconds, runner.solved()
+						/ seconds);
+		System.err.printf("latency (ms): p50 %.3f, p90 %.3f, p99 %.3f, "
+				+ "max %.3f%n", runner.percentile(50) / 1e6,
+				runner.percentile(90) / 1e6, runner.percentile(99) / 1e6,
+				runner.percentile(100) / 1e6);
+		if (runner.failures() > 0) {
+			System.exit(1);
+		}
+	}
+}
@@ -0,0 +1,645 @@
+package a2;
+
+import java.nio.*;
+import java.util.*;
+
+/**
+ * A funding instance stored column by column in direct (off-heap) buffers,
+ * for instances too large to hold as Donation and Project objects.
+ *
+ * Projects and donations are numbered from 0 in the order they are added.
+ * The store holds the cost and needed funds of each project, the total and
+ * unspent amount of each donation, and one edge for each project a donation
+ * may be spent on, with the amount of the donation allocated along it. The
+ * edges of donation d are firstEdge(d) .. firstEdge(d+1)-1.
+ *
+ * Project and Donation objects are only made when asked for by project(p) or
+ * donation(d), as snapshots of the entry at that time.
+ *
+ * The columns are outside the Java heap, so -Xmx doesn't make room for them:
+ * a large store needs -XX:MaxDirectMemorySize set to cover them (by default
+ * it is the same as -Xmx). Once solved, a store takes about 28 bytes for each
+ * project and each donation and 16 for each edge, so 4M projects and 8M
+ * donations with two edges each need about 600MB (and fail with an
+ * OutOfMemoryError at -Xmx256m unless the limit is raised). A column that
+ * grows keeps its old buffer until that is collected, so creating a store
+ * with the expected counts also avoids those peaks.
+ */
+
+public class ColumnarInstance {
+
+	// initial number of entries in each column
+	private static final int INITIAL_CAPACITY = 1024;
+
+	// cost and needed funds of each project
+	private IntColumn cost;
+	private IntColumn needed;
+	// total and unspent amount of each donation
+	private IntColumn total;
+	private IntColumn unspent;
+	// edges of donation d are first[d] .. first[d+1]-1
+	private IntColumn first;
+	// project each edge leads to, and the amount allocated along it
+	private IntColumn edgeProject;
+	private IntColumn flow;
+	// edges into each project, built when needed by solve:
+	// the edges into project p are byProject[projectFirst[p]] ..
+	// byProject[projectFirst[p+1]-1], and edgeDonation is the donation of
+	// each edge
+	private IntColumn projectFirst;
+	private IntColumn byProject;
+	private IntColumn edgeDonation;
+	// whether the edges into each project are up to date
+	private boolean indexed;
+	// working columns of Dinic's algorithm, kept from one solve to the next
+	// (null until the first solve)
+	private IntColumn level;
+	private IntColumn arc;
+	private IntColumn path;
+	private IntColumn pathEdge;
+
+	/*
+	 * invariant: first.size() == total.size() + 1 && first.get(0) == 0 &&
+	 * edgeProject.size() == flow.size() == first.get(total.size()) &&
+	 *
+	 * for each project p, needed(p) == cost(p) - (sum of the flows into p) &&
+	 *
+	 * for each donation d, unspent(d) == total(d) - (sum of the flows out of
+	 * d)
+	 */
+
+	/**
+	 * @postcondition: creates a new store with no projects or donations.
+	 */
+	public ColumnarInstance() {
+		this(INITIAL_CAPACITY, INITIAL_CAPACITY, INITIAL_CAPACITY);
+	}
+
+	/**
+	 * @precondition: projects >= 0 && donations >= 0 && edges >= 0
+	 * @postcondition: creates a new store with no projects or donations, with
+	 *                 room for the given numbers of projects, donations and
+	 *                 edges before any column has to grow.
+	 */
+	public ColumnarInstance(int projects, int donations, int edges) {
+		assert projects >= 0 && donations >= 0 && edges >= 0;
+		cost = new IntColumn(projects);
+		needed = new IntColumn(projects);
+		total = new IntColumn(donations);
+		unspent = new IntColumn(donations);
+		first = new IntColumn(donations + 1);
+		first.add(0);
+		edgeProject = new IntColumn(edges);
+		flow = new IntColumn(edges);
+	}
+
+	/**
+	 * @precondition: as for the donations and projects of
+	 *                IterativeAllocator.canAllocate
+	 * @postcondition: returns a store holding the given projects (in the order
+	 *                 of the set's iterator) and donations (in order), with
+	 *                 no allocations.
+	 */
+	public static ColumnarInstance of(List<Donation> donations,
+			Collection<Project> projects) {
+		int edges = 0;
+		for (Donation d : donations) {
+			edges = edges + d.getProjects().size();
+		}
+		ColumnarInstance store = new ColumnarInstance(projects.size(),
+				donations.size(), edges);
+		Map<Project, Integer> index = new HashMap<Project, Integer>();
+		for (Project p : projects) {
+			index.put(p, store.addProject(p.neededFunds()));
+		}
+		for (Donation d : donations) {
+			List<Integer> eligible = new ArrayList<Integer>();
+			for (Project p : d.getProjects()) {
+				if (index.containsKey(p)) {
+					eligible.add(index.get(p));
+				}
+			}
+			int[] list = new int[eligible.size()];
+			for (int k = 0; k < list.length; k++) {
+				list[k] = eligible.get(k);
+			}
+			store.addDonation(d.getUnspent(), list);
+		}
+		return store;
+	}
+
+	/**
+	 * @precondition: as for IterativeAllocator.canAllocate
+	 * @postcondition: as for IterativeAllocator.canAllocate. The instance is
+	 *                 copied into a ColumnarInstance and solved there, and the
+	 *                 allocations found are made on the given projects.
+	 */
+	public static boolean canAllocate(List<Donation> donations,
+			Set<Project> projects) {
+		List<Project> sinks = new ArrayList<Project>(projects);
+		ColumnarInstance store = of(donations, sinks);
+		if (!store.solve()) {
+			return false;
+		}
+		for (int d = 0; d < store.donationCount(); d++) {
+			for (int e = store.firstEdge(d); e < store.firstEdge(d + 1); e++) {
+				if (store.flow(e) > 0) {
+					sinks.get(store.edgeProject(e)).allocate(
+							donations.get(d), store.flow(e));
+				}
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @postcondition: returns the number of projects.
+	 */
+	public int projectCount() {
+		return cost.size();
+	}
+
+	/**
+	 * @postcondition: returns the number of donations.
+	 */
+	public int donationCount() {
+		return total.size();
+	}
+
+	/**
+	 * @postcondition: returns the number of edges, that is the sum over the
+	 *                 donations of the number of projects each may be spent
+	 *                 on.
+	 */
+	public int edgeCount() {
+		return edgeProject.size();
+	}
+
+	/**
+	 * @precondition: cost > 0
+	 * @postcondition: adds a new project with the given cost and no
+	 *                 allocations, and returns its index.
+	 */
+	public int addProject(int cost) {
+		assert cost > 0;
+		this.cost.add(cost);
+		needed.add(cost);
+		indexed = false;
+		return this.cost.size() - 1;
+	}
+
+	/**
+	 * @precondition: total > 0 && projects != null and projects holds
+	 *                distinct indices of projects of this store
+	 * @postcondition: adds a new unspent donation of the given total that may
+	 *                 be spent on the given projects, and returns its index.
+	 */
+	public int addDonation(int total, int... projects) {
+		assert total > 0 && projects != null;
+		for (int p : projects) {
+			assert 0 <= p && p < projectCount();
+			edgeProject.add(p);
+			flow.add(0);
+		}
+		this.total.add(total);
+		unspent.add(total);
+		first.add(edgeProject.size());
+		indexed = false;
+		return this.total.size() - 1;
+	}
+
+	/**
+	 * @precondition: 0 <= p < projectCount()
+	 * @postcondition: returns the cost of project p.
+	 */
+	public int cost(int p) {
+		return cost.get(p);
+	}
+
+	/**
+	 * @precondition: 0 <= p < projectCount()
+	 * @postcondition: returns the funds project p still needs.
+	 */
+	public int needed(int p) {
+		return needed.get(p);
+	}
+
+	/**
+	 * @precondition: 0 <= d < donationCount()
+	 * @postcondition: returns the total of donation d.
+	 */
+	public int total(int d) {
+		return total.get(d);
+	}
+
+	/**
+	 * @precondition: 0 <= d < donationCount()
+	 * @postcondition: returns the unspent amount of donation d.
+	 */
+	public int unspent(int d) {
+		return unspent.get(d);
+	}
+
+	/**
+	 * @precondition: 0 <= d <= donationCount()
+	 * @postcondition: returns the first edge of donation d (or edgeCount() if
+	 *                 d == donationCount()).
+	 */
+	public int firstEdge(int d) {
+		return first.get(d);
+	}
+
+	/**
+	 * @precondition: 0 <= e < edgeCount()
+	 * @postcondition: returns the project edge e leads to.
+	 */
+	public int edgeProject(int e) {
+		return edgeProject.get(e);
+	}
+
+	/**
+	 * @precondition: 0 <= e < edgeCount()
+	 * @postcondition: returns the amount allocated along edge e.
+	 */
+	public int flow(int e) {
+		return flow.get(e);
+	}
+
+	/**
+	 * @postcondition: removes all of the allocations.
+	 */
+	public void deallocateAll() {
+		for (int p = 0; p < projectCount(); p++) {
+			needed.set(p, cost.get(p));
+		}
+		for (int d = 0; d < donationCount(); d++) {
+			unspent.set(d, total.get(d));
+		}
+		for (int e = 0; e < edgeCount(); e++) {
+			flow.set(e, 0);
+		}
+	}
+
+	/**
+	 * @postcondition: returns true and completely funds every project if that
+	 *                 can be done, starting from the current allocations;
+	 *                 otherwise returns false and removes all of the
+	 *                 allocations.
+	 *
+	 *                 The instance is solved as a maximum flow problem with
+	 *                 Dinic's algorithm, running on the columns themselves.
+	 *                 Its working arrays are off-heap too, and are kept for
+	 *                 the next solve, so solving makes only a constant number
+	 *                 of heap objects.
+	 */
+	public boolean solve() {
+		long stillNeeded = 0;
+		for (int p = 0; p < projectCount(); p++) {
+			stillNeeded = stillNeeded + needed.get(p);
+		}
+		long available = 0;
+		for (int d = 0; d < donationCount(); d++) {
+			available = available + unspent.get(d);
+		}
+		if (available >= stillNeeded) {
+			indexProjects();
+			new Dinic().run();
+			stillNeeded = 0;
+			for (int p = 0; p < projectCount(); p++) {
+				stillNeeded = stillNeeded + needed.get(p);
+			}
+		}
+		if (stillNeeded > 0) {
+			deallocateAll();
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * @precondition: 0 <= p < projectCount()
+	 * @postcondition: returns a new Project for project p (named "P" followed
+	 *                 by p) with its current allocations. Each donation in
+	 *                 those allocations is a new Donation (named "D" followed
+	 *                 by its index) with its current unspent amount, that may
+	 *                 only be spent on the returned project. The objects are
+	 *                 not kept in step with this store.
+	 */
+	public Project project(int p) {
+		Project project = new Project("P" + p, cost.get(p));
+		Set<Project> only = Collections.singleton(project);
+		indexProjects();
+		for (int k = projectFirst.get(p); k < projectFirst.get(p + 1); k++) {
+			int e = byProject.get(k);
+			int amount = flow.get(e);
+			if (amount > 0) {
+				int d = edgeDonation.get(e);
+				Donation donation = new Donation("D" + d, total.get(d), only);
+				// spend what went elsewhere, then allocate the rest here
+				donation.spend(total.get(d) - unspent.get(d) - amount);
+				project.allocate(donation, amount);
+			}
+		}
+		return project;
+	}
+
+	/**
+	 * @precondition: 0 <= d < donationCount()
+	 * @postcondition: returns a new Donation for donation d (named "D"
+	 *                 followed by d) with its current unspent amount. The
+	 *                 projects it may be spent on are new Projects (named as
+	 *                 for project(p)) without allocations. The objects are not
+	 *                 kept in step with this store.
+	 */
+	public Donation donation(int d) {
+		Set<Project> projects = new HashSet<Project>();
+		for (int e = first.get(d); e < first.get(d + 1); e++) {
+			int p = edgeProject.get(e);
+			projects.add(new Project("P" + p, cost.get(p)));
+		}
+		Donation donation = new Donation("D" + d, total.get(d), projects);
+		donation.spend(total.get(d) - unspent.get(d));
+		return donation;
+	}
+
+	/**
+	 * builds the edges into each project, if they are stale
+	 */
+	private void indexProjects() {
+		if (indexed) {
+			return;
+		}
+		int pn = projectCount();
+		int m = edgeCount();
+		projectFirst = reset(projectFirst, pn + 1, 0);
+		for (int e = 0; e < m; e++) {
+			int p = edgeProject.get(e);
+			projectFirst.set(p + 1, projectFirst.get(p + 1) + 1);
+		}
+		for (int p = 0; p < pn; p++) {
+			projectFirst.set(p + 1, projectFirst.get(p + 1)
+					+ projectFirst.get(p));
+		}
+		byProject = reset(byProject, m, 0);
+		edgeDonation = reset(edgeDonation, m, 0);
+		// projectFirst[p] is used as the next free position among the edges
+		// into project p, which leaves it at the start of project p+1, so the
+		// starts are moved back up afterwards
+		for (int d = 0; d < donationCount(); d++) {
+			for (int e = first.get(d); e < first.get(d + 1); e++) {
+				int p = edgeProject.get(e);
+				byProject.set(projectFirst.get(p), e);
+				projectFirst.set(p, projectFirst.get(p) + 1);
+				edgeDonation.set(e, d);
+			}
+		}
+		for (int p = pn; p > 0; p--) {
+			projectFirst.set(p, projectFirst.get(p - 1));
+		}
+		projectFirst.set(0, 0);
+		indexed = true;
+	}
+
+	/**
+	 * returns the given column (or a new one if it is null) emptied and then
+	 * filled with size copies of value
+	 */
+	private static IntColumn reset(IntColumn column, int size, int value) {
+		if (column == null) {
+			column = new IntColumn(size);
+		}
+		column.clear();
+		column.fill(size, value);
+		return column;
+	}
+
+	/**
+	 * Dinic's algorithm on the network source -> donations -> projects ->
+	 * sink, where the source edges carry the unspent amounts, the sink edges
+	 * the needed funds, and the edges between are unbounded. Donations are
+	 * nodes 0 .. donationCount()-1 and projects the nodes after them.
+	 */
+	private class Dinic {
+
+		// number of donations and of nodes
+		private final int dn = donationCount();
+		private final int n = dn + projectCount();
+		// level of the projects that lead to the sink; level holds the
+		// distance of each node from the source (-1 if unreached or a dead
+		// end), arc the next edge to try at each node, and path the nodes of
+		// the current path with pathEdge the edge leaving each of them
+		private int sinkLevel;
+
+		Dinic() {
+			level = reset(level, n, -1);
+			arc = reset(arc, n, 0);
+			path = reset(path, n, 0);
+			pathEdge = reset(pathEdge, n, 0);
+		}
+
+		void run() {
+			while (buildLevels()) {
+				for (int d = 0; d < dn; d++) {
+					blockingFlow(d);
+				}
+			}
+		}
+
+		/**
+		 * sets the levels by a breadth-first search from the source along
+		 * residual edges, stopping at the first projects that still need
+		 * funds, and returns false if there are none
+		 */
+		private boolean buildLevels() {
+			IntColumn queue = path;
+			int tail = 0;
+			for (int u = 0; u < n; u++) {
+				level.set(u, -1);
+			}
+			for (int d = 0; d < dn; d++) {
+				arc.set(d, first.get(d));
+				if (unspent.get(d) > 0) {
+					level.set(d, 0);
+					queue.set(tail++, d);
+				}
+			}
+			for (int p = 0; p < n - dn; p++) {
+				arc.set(dn + p, projectFirst.get(p));
+			}
+			sinkLevel = Integer.MAX_VALUE;
+			for (int head = 0; head < tail; head++) {
+				int u = queue.get(head);
+				int next = level.get(u) + 1;
+				if (level.get(u) >= sinkLevel) {
+					break;
+				}
+				if (u < dn) {
+					for (int e = first.get(u); e < first.get(u + 1); e++) {
+						int v = dn + edgeProject.get(e);
+						if (level.get(v) < 0) {
+							level.set(v, next);
+							queue.set(tail++, v);
+						}
+					}
+					continue;
+				}
+				int p = u - dn;
+				if (needed.get(p) > 0) {
+					sinkLevel = level.get(u);
+					continue;
+				}
+				for (int k = projectFirst.get(p); k < projectFirst.get(p + 1); k++) {
+					int e = byProject.get(k);
+					int v = edgeDonation.get(e);
+					if (flow.get(e) > 0 && level.get(v) < 0) {
+						level.set(v, next);
+						queue.set(tail++, v);
+					}
+				}
+			}
+			return sinkLevel != Integer.MAX_VALUE;
+		}
+
+		/**
+		 * pushes as much as possible of the unspent amount of donation root
+		 * along shortest paths to projects that still need funds
+		 */
+		private void blockingFlow(int root) {
+			int depth = 0;
+			path.set(0, root);
+			while (level.get(root) == 0 && unspent.get(root) > 0) {
+				int u = path.get(depth);
+				if (u >= dn && level.get(u) == sinkLevel
+						&& needed.get(u - dn) > 0) {
+					augment(depth);
+					depth = 0;
+					continue;
+				}
+				int e = level.get(u) < sinkLevel ? advance(u) : -1;
+				if (e >= 0) {
+					pathEdge.set(depth, e);
+					path.set(++depth, u < dn ? dn + edgeProject.get(e)
+							: edgeDonation.get(e));
+					continue;
+				}
+				// u is a dead end
+				level.set(u, -1);
+				if (depth == 0) {
+					return;
+				}
+				depth--;
+				arc.set(path.get(depth), arc.get(path.get(depth)) + 1);
+			}
+		}
+
+		/**
+		 * returns the next admissible edge out of u (moving its arc past
+		 * those that aren't), or -1 if there is none
+		 */
+		private int advance(int u) {
+			int next = level.get(u) + 1;
+			if (u < dn) {
+				for (int a = arc.get(u); a < first.get(u + 1); a++) {
+					if (level.get(dn + edgeProject.get(a)) == next) {
+						arc.set(u, a);
+						return a;
+					}
+				}
+				arc.set(u, first.get(u + 1));
+				return -1;
+			}
+			int p = u - dn;
+			for (int a = arc.get(u); a < projectFirst.get(p + 1); a++) {
+				int e = byProject.get(a);
+				if (flow.get(e) > 0 && level.get(edgeDonation.get(e)) == next) {
+					arc.set(u, a);
+					return e;
+				}
+			}
+			arc.set(u, projectFirst.get(p + 1));
+			return -1;
+		}
+
+		/**
+		 * pushes the bottleneck amount along the current path, which ends at
+		 * a project that still needs funds
+		 */
+		private void augment(int depth) {
+			int root = path.get(0);
+			int p = path.get(depth) - dn;
+			int amount = Math.min(unspent.get(root), needed.get(p));
+			for (int i = 0; i < depth; i++) {
+				if (path.get(i) >= dn) {
+					amount = Math.min(amount, flow.get(pathEdge.get(i)));
+				}
+			}
+			for (int i = 0; i < depth; i++) {
+				int e = pathEdge.get(i);
+				flow.set(e, flow.get(e)
+						+ (path.get(i) < dn ? amount : -amount));
+			}
+			unspent.set(root, unspent.get(root) - amount);
+			needed.set(p, needed.get(p) - amount);
+		}
+	}
+
+	/**
+	 * A growable column of ints in a direct buffer, holding at most
+	 * Integer.MAX_VALUE / 4 entries.
+	 */
+	private static class IntColumn {
+
+		// the entries, and the number of them in use
+		private IntBuffer buffer;
+		private int size;
+
+		IntColumn(int capacity) {
+			buffer = allocate(Math.max(capacity, 1));
+		}
+
+		int size() {
+			return size;
+		}
+
+		int get(int i) {
+			return buffer.get(i);
+		}
+
+		void set(int i, int value) {
+			buffer.put(i, value);
+		}
+
+		void clear() {
+			size = 0;
+		}
+
+		void add(int value) {
+			if (size == buffer.capacity()) {
+				if (size >= Integer.MAX_VALUE / 4) {
+					throw new IllegalStateException("column is full");
+				}
+				IntBuffer bigger = allocate((int) Math.min(2L * size,
+						Integer.MAX_VALUE / 4));
+				buffer.position(0);
+				bigger.put(buffer);
+				buffer = bigger;
+			}
+			buffer.put(size++, value);
+		}
+
+		/**
+		 * adds entries with the given value until the column has size
+		 * entries
+		 */
+		void fill(int size, int value) {
+			while (this.size < size) {
+				add(value);
+			}
+		}
+
+		private static IntBuffer allocate(int capacity) {
+			return ByteBuffer.allocateDirect(capacity * 4)
+					.order(ByteOrder.nativeOrder()).asIntBuffer();
+		}
+	}
+}
@@ -0,0 +1,298 @@
+package a2;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * A class representing a funding instance: a list of donations and the set of
+ * projects they should fund, together with the names used for them and
+ * (optionally) the allocator that should be used to solve it.
+ *
+ * Instances are read from a line-based text format. Blank lines and lines
+ * starting with '#' are ignored; every other line is one of
+ *
+ * 	instance NAME
+ *
+ * 	allocator NAME
+ *
+ * 	project NAME COST
+ *
+ * 	donation NAME TOTAL PROJECT...
+ *
+ * 	end
+ *
+ * where each project must be declared before any donation that names it and
+ * "end" (or the end of the input) closes the instance. Several instances can
+ * therefore follow one another in the same file or stream.
+ */
+
+public class Instance {
+
+	// name of instance
+	private String name;
+	// allocator to use for this instance, or null if none was given
+	private Allocator allocator;
+	// donations of the instance, in the order they were declared
+	private List<Donation> donations;
+	// projects of the instance, in the order they were declared
+	private Set<Project> projects;
+	// donations and projects by name, in the order they were declared
+	private Map<String, Donation> donationNames;
+	private Map<String, Project> projectNames;
+	// names of the donations and projects
+	private Map<Donation, String> donationNamesOf;
+	private Map<Project, String> projectNamesOf;
+
+	/*
+	 * invariant: name != null && donations != null && projects != null &&
+	 * donationNames.values() are the elements of donations &&
+	 * projectNames.values() are the elements of projects
+	 */
+
+	/**
+	 * @precondition: name != null
+	 * @postcondition: creates a new instance with the given name and no
+	 *                 donations, projects or allocator.
+	 */
+	public Instance(String name) {
+		assert name != null;
+		this.name = name;
+		donations = new ArrayList<Donation>();
+		projects = new LinkedHashSet<Project>();
+		donationNames = new LinkedHashMap<String, Donation>();
+		projectNames = new LinkedHashMap<String, Project>();
+		donationNamesOf = new HashMap<Donation, String>();
+		projectNamesOf = new HashMap<Project, String>();
+	}
+
+	/**
+	 * @postcondition: returns the name of this instance.
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * @postcondition: returns the allocator named for this instance, or null
+	 *                 if none was named.
+	 */
+	public Allocator getAllocator() {
+		return allocator;
+	}
+
+	/**
+	 * @postcondition: sets the allocator to use for this instance (null for
+	 *                 none).
+	 */
+	public void setAllocator(Allocator allocator) {
+		this.allocator = allocator;
+	}
+
+	/**
+	 * @postcondition: returns the donations of this instance. (The list is
+	 *                 the one passed to an allocator, so it shouldn't be
+	 *                 modified.)
+	 */
+	public List<Donation> getDonations() {
+		return donations;
+	}
+
+	/**
+	 * @postcondition: returns the projects of this instance. (The set is the
+	 *                 one passed to an allocator, so it shouldn't be
+	 *                 modified.)
+	 */
+	public Set<Project> getProjects() {
+		return projects;
+	}
+
+	/**
+	 * @postcondition: returns the project with the given name, or null if
+	 *                 there is none.
+	 */
+	public Project getProject(String name) {
+		return projectNames.get(name);
+	}
+
+	/**
+	 * @postcondition: returns the donation with the given name, or null if
+	 *                 there is none.
+	 */
+	public Donation getDonation(String name) {
+		return donationNames.get(name);
+	}
+
+	/**
+	 * @postcondition: returns the names of the projects, in the order they
+	 *                 were declared.
+	 */
+	public Set<String> getProjectNames() {
+		return Collections.unmodifiableSet(projectNames.keySet());
+	}
+
+	/**
+	 * @postcondition: returns the names of the donations, in the order they
+	 *                 were declared.
+	 */
+	public Set<String> getDonationNames() {
+		return Collections.unmodifiableSet(donationNames.keySet());
+	}
+
+	/**
+	 * @postcondition: returns the name of the given project, or null if it
+	 *                 isn't one of this instance's projects.
+	 */
+	public String nameOf(Project project) {
+		return projectNamesOf.get(project);
+	}
+
+	/**
+	 * @postcondition: returns the name of the given donation, or null if it
+	 *                 isn't one of this instance's donations.
+	 */
+	public String nameOf(Donation donation) {
+		return donationNamesOf.get(donation);
+	}
+
+	/**
+	 * @precondition: name != null && cost > 0 and no project with the given
+	 *                name has been added
+	 * @postcondition: adds and returns a new project with the given name and
+	 *                 cost.
+	 */
+	public Project addProject(String name, int cost) {
+		assert !projectNames.containsKey(name);
+		Project project = new Project(name, cost);
+		projects.add(project);
+		projectNames.put(name, project);
+		projectNamesOf.put(project, name);
+		return project;
+	}
+
+	/**
+	 * @precondition: name != null && total > 0 && projectNames != null, no
+	 *                donation with the given name has been added and each of
+	 *                projectNames names a project of this instance
+	 * @postcondition: adds and returns a new donation with the given name and
+	 *                 total that may be spent on the named projects.
+	 */
+	public Donation addDonation(String name, int total,
+			Collection<String> projectNames) {
+		assert !donationNames.containsKey(name);
+		Set<Project> eligible = new HashSet<Project>();
+		for (String p : projectNames) {
+			assert this.projectNames.containsKey(p);
+			eligible.add(this.projectNames.get(p));
+		}
+		Donation donation = new Donation(name, total, eligible);
+		donations.add(donation);
+		donationNames.put(name, donation);
+		donationNamesOf.put(donation, name);
+		return donation;
+	}
+
+	/**
+	 * @precondition: allocator != null, or this instance names an allocator
+	 * @postcondition: solves this instance using the allocator it names, or
+	 *                 the given one if it doesn't name one, and returns the
+	 *                 result of that allocator's canAllocate method.
+	 */
+	public boolean solve(Allocator allocator) {
+		Allocator chosen = this.allocator == null ? allocator : this.allocator;
+		assert chosen != null;
+		return chosen.canAllocate(donations, projects);
+	}
+
+	/**
+	 * @precondition: in != null
+	 * @postcondition: reads the next instance from in and returns it, or
+	 *                 returns null if in has no more instances. An instance
+	 *                 without an "instance" line is given the name
+	 *                 defaultName. Throws an IOException if the input is
+	 *                 malformed.
+	 */
+	public static Instance read(BufferedReader in, String defaultName)
+			throws IOException {
+		Instance instance = null;
+		String line;
+		while ((line = in.readLine()) != null) {
+			line = line.trim();
+			if (line.isEmpty() || line.startsWith("#")) {
+				continue;
+			}
+			String[] words = line.split("\\s+");
+			if (words[0].equals("end")) {
+				if (instance != null) {
+					return instance;
+				}
+				continue;
+			}
+			if (instance == null) {
+				instance = new Instance(words[0].equals("instance")
+						&& words.length == 2 ? words[1] : defaultName);
+				if (words[0].equals("instance")) {
+					continue;
+				}
+			}
+			instance.declare(words, line);
+		}
+		return instance;
+	}
+
+	/**
+	 * @precondition: line != null
+	 * @postcondition: adds the allocator, project or donation declared on the
+	 *                 line (in the format read by read) to this instance.
+	 *                 Throws an IOException, leaving the instance unchanged,
+	 *                 if the line is malformed.
+	 */
+	public void declare(String line) throws IOException {
+		declare(line.trim().split("\\s+"), line.trim());
+	}
+
+	/**
+	 * adds the declaration on a (split) line to this instance
+	 */
+	private void declare(String[] words, String line) throws IOException {
+		try {
+			if (words[0].equals("allocator") && words.length == 2) {
+				allocator = Allocator.forName(words[1]);
+			} else if (words[0].equals("project") && words.length == 3) {
+				if (projectNames.containsKey(words[1])) {
+					throw new IOException("duplicate project: " + line);
+				}
+				addProject(words[1], positive(words[2], line));
+			} else if (words[0].equals("donation") && words.length >= 3) {
+				List<String> eligible = Arrays.asList(words).subList(3,
+						words.length);
+				if (donationNames.containsKey(words[1])) {
+					throw new IOException("duplicate donation: " + line);
+				}
+				for (String p : eligible) {
+					if (!projectNames.containsKey(p)) {
+						throw new IOException("unknown project: " + line);
+					}
+				}
+				addDonation(words[1], positive(words[2], line), eligible);
+			} else {
+				throw new IOException("malformed line in " + name + ": "
+						+ line);
+			}
+		} catch (IllegalArgumentException e) {
+			throw new IOException("malformed line in " + name + ": " + line,
+					e);
+		}
+	}
+
+	/**
+	 * returns the positive integer in word, throwing an IOException if it
+	 * isn't one
+	 */
+	private static int positive(String word, String line) throws IOException {
+		int value = Integer.parseInt(word);
+		if (value <= 0) {
+			throw new IOException("amount must be positive: " + line);
+		}
+		return value;
+	}
+}
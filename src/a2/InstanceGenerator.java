@@ -0,0 +1,111 @@
+package a2;
+
+import java.util.*;
+
+/**
+ * Generates reproducible random instances of a given shape and size, for
+ * measuring how the allocators scale.
+ *
+ * Every generated instance can be completely funded, and only just: each
+ * donation is meant for one of the projects it may be spent on, and the cost
+ * of each project is the total of the donations meant for it. An allocator
+ * therefore has to find an allocation that spends every donation.
+ */
+
+public class InstanceGenerator {
+
+	/**
+	 * The shapes of instance that can be generated.
+	 */
+	public enum Topology {
+		// each donation may also be spent on one random project
+		SPARSE,
+		// each donation may also be spent on a quarter of the projects
+		DENSE,
+		// each donation may also be spent on project 0, a general fund
+		STAR,
+		// each donation may also be spent on the next project, so
+		// transfers between projects have to follow long paths
+		CHAIN,
+		// projects come in groups of COMPONENT_SIZE, and donations may only
+		// be spent on projects of their own group
+		COMPONENTS
+	}
+
+	// number of projects in each group of a COMPONENTS instance
+	public static final int COMPONENT_SIZE = 4;
+	// number of donations generated per project
+	private static final int DONATIONS_PER_PROJECT = 2;
+	// largest donation generated
+	private static final int MAX_TOTAL = 10;
+
+	/**
+	 * @precondition: topology != null && size > 0
+	 * @postcondition: returns a new instance of the given topology with size
+	 *                 projects (named P0, P1, ...) and DONATIONS_PER_PROJECT
+	 *                 times as many donations (named D0, D1, ...). The same
+	 *                 arguments always give the same instance.
+	 */
+	public static Instance generate(Topology topology, int size, long seed) {
+		assert topology != null && size > 0;
+		Random random = new Random(seed);
+		int dn = size * DONATIONS_PER_PROJECT;
+		// the project each donation is meant for, and its total
+		int[] meant = new int[dn];
+		int[] totals = new int[dn];
+		int[] costs = new int[size];
+		for (int i = 0; i < dn; i++) {
+			// the first donations make sure every project gets one
+			meant[i] = i < size ? i : random.nextInt(size);
+			totals[i] = 1 + random.nextInt(MAX_TOTAL);
+			costs[meant[i]] = costs[meant[i]] + totals[i];
+		}
+
+		Instance instance = new Instance(topology.name().toLowerCase(
+				Locale.ROOT) + "-" + size);
+		for (int p = 0; p < size; p++) {
+			instance.addProject("P" + p, costs[p]);
+		}
+		for (int i = 0; i < dn; i++) {
+			// the eligible projects, in order, without repeats
+			Set<String> eligible = new LinkedHashSet<String>();
+			eligible.add("P" + meant[i]);
+			for (int p : others(topology, size, meant[i], random)) {
+				eligible.add("P" + p);
+			}
+			instance.addDonation("D" + i, totals[i], eligible);
+		}
+		return instance;
+	}
+
+	/**
+	 * returns the other projects a donation meant for project p may be spent
+	 * on in an instance of the given topology and size
+	 */
+	private static List<Integer> others(Topology topology, int size, int p,
+			Random random) {
+		List<Integer> others = new ArrayList<Integer>();
+		switch (topology) {
+		case SPARSE:
+			others.add(random.nextInt(size));
+			break;
+		case DENSE:
+			for (int k = 0; k < Math.max(1, size / 4); k++) {
+				others.add(random.nextInt(size));
+			}
+			break;
+		case STAR:
+			others.add(0);
+			break;
+		case CHAIN:
+			others.add((p + 1) % size);
+			break;
+		case COMPONENTS:
+			int group = p / COMPONENT_SIZE * COMPONENT_SIZE;
+			int groupSize = Math.min(COMPONENT_SIZE, size - group);
+			others.add(group + random.nextInt(groupSize));
+			break;
+		}
+		return others;
+	}
+}
@@ -20,20 +20,25 @@ public class IterativeAllocator {
 	 */
 	public static boolean canAllocate(List<Donation> donations,
 			Set<Project> projects) {
-		// get set of potential paths
-		Set<List<Project>> paths = paths(donations, projects);
+		// get potential paths, found as they are needed
+		Paths paths = new Paths(donations, projects);
+		// get the donations that can be used for each project
+		Map<Project, List<Donation>> donors = donors(donations, projects);
 		// check to see if a positive integer and path still exists that
 		// satisfies properties (1)-(3)
-		while (checkValidPaths(paths, donations)) {
+		while (checkValidPaths(paths, donations, donors)) {
 			// iterate over each donation and path to allocate funds if possible
 			for (Donation d : donations) {
+				// a spent donation gives x = 0, which no path satisfies
+				if (d.spent()) {
+					continue;
+				}
 				for (List<Project> path : paths) {
 					if (checkProperties(
 							Math.min(path.get(path.size() - 1).neededFunds(),
-									d.getUnspent()), path, donations)) {
+									d.getUnspent()), path, donors)) {
 						allocateDonations(Math.min(path.get(path.size() - 1)
-								.neededFunds(), d.getUnspent()), path,
-								donations);
+								.neededFunds(), d.getUnspent()), path, donors);
 					}
 				}
 			}
@@ -53,16 +58,22 @@ public class IterativeAllocator {
 	private static Map<Project, Set<Project>> graph(List<Donation> donations,
 			Set<Project> projects) {
 		Map<Project, Set<Project>> map = new HashMap<Project, Set<Project>>();
-		for (Project p1 : projects) {
+		for (Project p : projects) {
 			// create key that represents a vertex
-			map.put(p1, new HashSet<Project>());
-			for (Project p2 : projects) {
-				if (!p1.equals(p2)) {
-					// check to see if an edge exists between p1 and p2
-					for (Donation d : donations) {
-						if (d.canBeUsedFor(p1) && d.canBeUsedFor(p2)) {
-							map.get(p1).add(p2);
-						}
+			map.put(p, new HashSet<Project>());
+		}
+		// add an edge between each pair of projects a donation can be used for
+		for (Donation d : donations) {
+			List<Project> eligible = new ArrayList<Project>();
+			for (Project p : d.getProjects()) {
+				if (map.containsKey(p)) {
+					eligible.add(p);
+				}
+			}
+			for (Project p1 : eligible) {
+				for (Project p2 : eligible) {
+					if (!p1.equals(p2)) {
+						map.get(p1).add(p2);
 					}
 				}
 			}
@@ -71,64 +82,172 @@ public class IterativeAllocator {
 	}
 
 	/**
-	 * returns a map to track whether each project has been visited
+	 * returns the donations that can be used for each of the given projects,
+	 * in the order they appear in donations
 	 */
-	private static Map<Project, Boolean> visited(Set<Project> projects) {
-		Map<Project, Boolean> map = new HashMap<Project, Boolean>();
+	private static Map<Project, List<Donation>> donors(
+			List<Donation> donations, Set<Project> projects) {
+		Map<Project, List<Donation>> map = new HashMap<Project, List<Donation>>();
 		for (Project p : projects) {
-			map.put(p, false);
+			map.put(p, new ArrayList<Donation>());
+		}
+		for (Donation d : donations) {
+			for (Project p : d.getProjects()) {
+				if (map.containsKey(p)) {
+					map.get(p).add(d);
+				}
+			}
 		}
 		return map;
 	}
 
 	/**
-	 * populates a list with a path between 2 projects found using DFS
+	 * The paths between pairs of projects, found by DFS only when they are
+	 * first iterated over.
+	 * 
+	 * A DFS from a source project reaches each other project for the first
+	 * time along the same path as a DFS from the source that stops at that
+	 * project, so one DFS per source finds the paths from that source to all
+	 * of the projects. The DFS tree from each source is kept (as the parent of
+	 * each project reached), and each path is built from it the first time
+	 * it is used. The graph depends only on which projects the donations can
+	 * be used for, not on the allocations, so none of this is invalidated as
+	 * funds are allocated; whether a path can be used is checked afresh each
+	 * time by checkProperties.
 	 */
-	private static Boolean pathDFS(Map<Project, Set<Project>> map,
-			List<Project> list, Project start, Project end,
-			Map<Project, Boolean> visited) {
-		// mark start project as visited
-		visited.put(start, true);
-		// add start project to path list
-		list.add(start);
-		// check to see if end project is reached
-		if (start.equals(end)) {
-			return true;
+	public static class Paths implements Iterable<List<Project>> {
+
+		// graph of the projects
+		private Map<Project, Set<Project>> graph;
+		// projects, in the order they are used as sources
+		private List<Project> sources;
+		// parent of each project reached from each source searched so far
+		// (null for the source itself), in the order they were reached
+		private Map<Project, Map<Project, Project>> trees;
+		// paths built so far, by source and then target
+		private Map<Project, Map<Project, List<Project>>> built;
+
+		/**
+		 * @precondition: as for canAllocate
+		 * @postcondition: creates the (not yet searched) paths between the
+		 *                 given projects, in the graph in which two projects
+		 *                 are joined if a donation can be used for both.
+		 */
+		public Paths(List<Donation> donations, Set<Project> projects) {
+			graph = graph(donations, projects);
+			sources = new ArrayList<Project>(projects);
+			trees = new HashMap<Project, Map<Project, Project>>();
+			built = new HashMap<Project, Map<Project, List<Project>>>();
 		}
-		// iterate over the outgoing edges of the start project
-		for (Project p : map.get(start)) {
-			// check if the connecting project has been visited
-			if (visited.get(p).equals(false)) {
-				visited.put(p, true);
-				if (pathDFS(map, list, p, end, visited)) {
-					return true;
+
+		/**
+		 * @postcondition: returns the number of source projects whose paths
+		 *                 have been searched for so far.
+		 */
+		public int searched() {
+			return trees.size();
+		}
+
+		/**
+		 * returns the DFS tree from source, searching the graph if it hasn't
+		 * been searched from source yet
+		 */
+		private Map<Project, Project> tree(Project source) {
+			Map<Project, Project> tree = trees.get(source);
+			if (tree == null) {
+				tree = new LinkedHashMap<Project, Project>();
+				tree.put(source, null);
+				pathDFS(source, tree);
+				trees.put(source, tree);
+				built.put(source, new HashMap<Project, List<Project>>());
+			}
+			return tree;
+		}
+
+		/**
+		 * adds the projects reachable from start that aren't yet in tree to
+		 * it using DFS
+		 */
+		private void pathDFS(Project start, Map<Project, Project> tree) {
+			// iterate over the outgoing edges of the start project
+			for (Project p : graph.get(start)) {
+				// check if the connecting project has been visited
+				if (!tree.containsKey(p)) {
+					tree.put(p, start);
+					pathDFS(p, tree);
 				}
 			}
 		}
-		// remove start project from list
-		list.remove(list.size() - 1);
-		return false;
-	}
 
-	/**
-	 * returns a set of paths that can be traversed in the graph
-	 */
-	private static Set<List<Project>> paths(List<Donation> donations,
-			Set<Project> projects) {
-		// a set that contains paths
-		Set<List<Project>> paths = new HashSet<List<Project>>();
-		// get the graph of projects
-		Map<Project, Set<Project>> map = graph(donations, projects);
-		// iterate over every project pair and add a path to the set if found
-		for (Project p : projects) {
-			for (Project p2 : projects) {
-				List<Project> path = new ArrayList<Project>();
-				if (pathDFS(map, path, p, p2, visited(projects))) {
-					paths.add(path);
+		/**
+		 * returns the path from source to target, which must be in the tree
+		 * from source
+		 */
+		private List<Project> path(Project source, Project target) {
+			List<Project> path = built.get(source).get(target);
+			if (path == null) {
+				path = new ArrayList<Project>();
+				for (Project p = target; p != null; p = trees.get(source)
+						.get(p)) {
+					path.add(p);
 				}
+				Collections.reverse(path);
+				built.get(source).put(target, path);
 			}
+			return path;
+		}
+
+		/**
+		 * returns an iterator over the paths that end at a project that still
+		 * needs funding. (A path to a fully funded project gives x = 0, which
+		 * never satisfies property (1), so it isn't built.) Sources are
+		 * searched only when the iteration reaches them.
+		 */
+		@Override
+		public Iterator<List<Project>> iterator() {
+			return new Iterator<List<Project>>() {
+				// index of the next source, the current source and the
+				// projects reached from it that are still to be visited
+				private int next = 0;
+				private Project source;
+				private Iterator<Project> targets;
+				// the next path to return, or null if not yet found
+				private List<Project> path;
+
+				@Override
+				public boolean hasNext() {
+					while (path == null) {
+						if (targets != null && targets.hasNext()) {
+							Project target = targets.next();
+							if (target.neededFunds() > 0) {
+								path = path(source, target);
+							}
+						} else if (next < sources.size()) {
+							source = sources.get(next++);
+							targets = tree(source).keySet().iterator();
+						} else {
+							return false;
+						}
+					}
+					return true;
+				}
+
+				@Override
+				public List<Project> next() {
+					if (!hasNext()) {
+						throw new NoSuchElementException();
+					}
+					List<Project> result = path;
+					path = null;
+					return result;
+				}
+
+				@Override
+				public void remove() {
+					throw new UnsupportedOperationException();
+				}
+			};
 		}
-		return paths;
 	}
 
 	/**
@@ -136,7 +255,7 @@ public class IterativeAllocator {
 	 * path satisfies properties (1)-(3)
 	 */
 	private static boolean checkProperties(int x, List<Project> path,
-			List<Donation> donations) {
+			Map<Project, List<Donation>> donors) {
 		// check that project path[n-1] is currently underfunded by at least x
 		// dollars and that x is a positive number
 		if (path.get(path.size() - 1).neededFunds() < x || !(x > 0)) {
@@ -145,10 +264,8 @@ public class IterativeAllocator {
 		// check that x dollars of funding could be allocated from the available
 		// donations to project path[0].
 		int available = 0;
-		for (Donation d : donations) {
-			if (d.canBeUsedFor(path.get(0))) {
-				available = available + d.getUnspent();
-			}
+		for (Donation d : donors.get(path.get(0))) {
+			available = available + d.getUnspent();
 		}
 		if (available < x) {
 			return false;
@@ -175,13 +292,17 @@ public class IterativeAllocator {
 	 * returns true if there exists a positive integer x and a path of n>0
 	 * distinct projects path satisfying properties (1)-(3)
 	 */
-	private static boolean checkValidPaths(Set<List<Project>> paths,
-			List<Donation> donations) {
+	private static boolean checkValidPaths(Paths paths,
+			List<Donation> donations, Map<Project, List<Donation>> donors) {
 		for (Donation d : donations) {
+			// a spent donation gives x = 0, which no path satisfies
+			if (d.spent()) {
+				continue;
+			}
 			for (List<Project> path : paths) {
 				if (checkProperties(
 						Math.min(path.get(path.size() - 1).neededFunds(),
-								d.getUnspent()), path, donations)) {
+								d.getUnspent()), path, donors)) {
 					return true;
 				}
 			}
@@ -194,15 +315,15 @@ public class IterativeAllocator {
 	 * path of projects
 	 */
 	private static void allocateDonations(int x, List<Project> path,
-			List<Donation> donations) {
+			Map<Project, List<Donation>> donors) {
 		// transfer x along the path of projects
 		for (int i = path.size() - 2; i >= 0; i--) {
 			path.get(i + 1).transfer(x, path.get(i));
 		}
 		// allocate x from available donations to path[0]
-		for (Donation d : donations) {
-			if (d.canBeUsedFor(path.get(0)) && x != 0) {
-				int available = d.getUnspent();
+		for (Donation d : donors.get(path.get(0))) {
+			int available = d.getUnspent();
+			if (available > 0 && x != 0) {
 				path.get(0).allocate(d, Math.min(x, available));
 				x = x - Math.min(x, available);
 			}
@@ -0,0 +1,678 @@
+package a2;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.util.*;
+
+/**
+ * An append-only record of every change to the allocations of an instance, so
+ * that the spending of each donation can be audited and the allocations at
+ * any earlier point can be rebuilt.
+ *
+ * Changes are made through the allocate, deallocate and transfer methods of
+ * this class (which call those of Project), or made directly (for example by
+ * an allocator) and then picked up by reconcile. Each change is appended to
+ * the ledger file as one or more fixed-size binary events, numbered from 1.
+ * Events are buffered and written in batches; commit writes and forces every
+ * event so far, sharing one force between threads that commit together.
+ *
+ * Every checkpointInterval events a compacted checkpoint of the state (the
+ * unspent amount of each donation and the non-zero allocations) is written
+ * beside the ledger file, so that stateAt only has to replay the events after
+ * the nearest checkpoint.
+ *
+ * Donations and projects are identified in the ledger by their position in
+ * the instance (in the order they were declared), so a ledger can only be
+ * read back with the same instance.
+ */
+
+public class Ledger implements Closeable {
+
+	// event types
+	public static final int ALLOCATE = 1;
+	public static final int DEALLOCATE = 2;
+	public static final int MOVE = 3;
+
+	// file headers
+	private static final int LEDGER_MAGIC = 0x4132_4c47;
+	private static final int CHECKPOINT_MAGIC = 0x4132_434b;
+	private static final int HEADER_SIZE = 8;
+	// size of an event: type, donation, project, source project and amount
+	private static final int EVENT_SIZE = 20;
+	// events buffered before they are written
+	private static final int BATCH_SIZE = 4096;
+
+	// donations and projects of the instance by position
+	private List<Donation> donations;
+	private List<Project> projects;
+	private Map<Donation, Integer> donationIds;
+	private Map<Project, Integer> projectIds;
+	// ledger file
+	private File file;
+	private FileChannel channel;
+	// events waiting to be written
+	private ByteBuffer buffer;
+	// state after every event so far
+	private State current;
+	// number of events written to the channel, and forced to disk
+	private long written;
+	private long forced;
+	// guards forcing the channel, so that one force serves several commits
+	private final Object forceLock = new Object();
+	// events between checkpoints (0 for none)
+	private int checkpointInterval;
+
+	/*
+	 * invariant: current.sequence() is the number of events appended &&
+	 * forced <= written <= current.sequence() && the buffer holds the events
+	 * after written && current reflects the allocations of the instance as of
+	 * the last event
+	 */
+
+	/**
+	 * @precondition: instance != null && file != null &&
+	 *                checkpointInterval >= 0. If file already exists it is a
+	 *                ledger written for this instance, and the instance has
+	 *                no allocations.
+	 * @postcondition: opens the ledger in file for appending, creating it if
+	 *                 it doesn't exist. If it did exist, the allocations it
+	 *                 records are made to the instance. Throws an IOException
+	 *                 if the file can't be opened or isn't a ledger.
+	 */
+	public Ledger(Instance instance, File file, int checkpointInterval)
+			throws IOException {
+		assert checkpointInterval >= 0;
+		this.file = file;
+		this.checkpointInterval = checkpointInterval;
+		donations = new ArrayList<Donation>(instance.getDonations());
+		projects = new ArrayList<Project>(instance.getProjects());
+		donationIds = new HashMap<Donation, Integer>();
+		for (int i = 0; i < donations.size(); i++) {
+			donationIds.put(donations.get(i), i);
+		}
+		projectIds = new HashMap<Project, Integer>();
+		for (int i = 0; i < projects.size(); i++) {
+			projectIds.put(projects.get(i), i);
+		}
+		buffer = ByteBuffer.allocateDirect(BATCH_SIZE * EVENT_SIZE);
+
+		channel = new RandomAccessFile(file, "rw").getChannel();
+		try {
+			if (channel.size() < HEADER_SIZE) {
+				ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+				header.putInt(LEDGER_MAGIC).putInt(EVENT_SIZE).flip();
+				channel.truncate(0);
+				writeFully(channel, header, 0);
+				current = initialState();
+			} else {
+				ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+				channel.read(header, 0);
+				header.flip();
+				if (header.getInt() != LEDGER_MAGIC
+						|| header.getInt() != EVENT_SIZE) {
+					throw new IOException("not a ledger: " + file);
+				}
+				// drop any partly written event at the end
+				long events = (channel.size() - HEADER_SIZE) / EVENT_SIZE;
+				channel.truncate(HEADER_SIZE + events * EVENT_SIZE);
+				current = stateAt(events);
+				current.applyTo(this);
+			}
+			channel.position(channel.size());
+		} catch (IOException e) {
+			channel.close();
+			throw e;
+		}
+		written = current.sequence();
+		forced = written;
+	}
+
+	/**
+	 * @precondition: as for Project.allocate
+	 * @postcondition: allocates the amount from the donation to the project
+	 *                 and records the allocation.
+	 */
+	public synchronized void allocate(Project project, Donation donation,
+			int amount) throws IOException {
+		project.allocate(donation, amount);
+		append(ALLOCATE, id(donation), id(project), -1, amount);
+	}
+
+	/**
+	 * @precondition: as for Project.deallocate
+	 * @postcondition: deallocates the amount of the donation from the project
+	 *                 and records the deallocation.
+	 */
+	public synchronized void deallocate(Project project, Donation donation,
+			int amount) throws IOException {
+		project.deallocate(donation, amount);
+		if (amount > 0) {
+			append(DEALLOCATE, id(donation), id(project), -1, amount);
+		}
+	}
+
+	/**
+	 * @precondition: as for Project.transfer
+	 * @postcondition: transfers the amount from the source project to the
+	 *                 destination, recording the amount moved from each
+	 *                 donation.
+	 */
+	public synchronized void transfer(int amount, Project destination,
+			Project source) throws IOException {
+		Map<Donation, Integer> before = source.getAllocations();
+		destination.transfer(amount, source);
+		Map<Donation, Integer> after = source.getAllocations();
+		for (Map.Entry<Donation, Integer> entry : before.entrySet()) {
+			Integer left = after.get(entry.getKey());
+			int moved = entry.getValue() - (left == null ? 0 : left);
+			if (moved > 0) {
+				append(MOVE, id(entry.getKey()), id(destination), id(source),
+						moved);
+			}
+		}
+	}
+
+	/**
+	 * @postcondition: records the changes made to the allocations of the
+	 *                 instance since the last recorded event without going
+	 *                 through this ledger (for example by an allocator), as
+	 *                 deallocations followed by allocations.
+	 */
+	public synchronized void reconcile() throws IOException {
+		List<Map<Donation, Integer>> actual;
+		actual = new ArrayList<Map<Donation, Integer>>();
+		for (Project p : projects) {
+			actual.add(p.getAllocations());
+		}
+		// undo recorded allocations that are now smaller or gone (collected
+		// first, since appending changes the recorded table)
+		AllocationTable recorded = current.allocations;
+		List<int[]> undo = new ArrayList<int[]>();
+		for (int slot = 0; slot < recorded.keys.length; slot++) {
+			int amount = recorded.values[slot];
+			if (amount > 0) {
+				int p = (int) (recorded.keys[slot] >>> 32);
+				int d = (int) recorded.keys[slot];
+				Integer now = actual.get(p).get(donations.get(d));
+				if (now == null || now < amount) {
+					int left = now == null ? 0 : now;
+					undo.add(new int[] { d, p, amount - left });
+				}
+			}
+		}
+		for (int[] u : undo) {
+			append(DEALLOCATE, u[0], u[1], -1, u[2]);
+		}
+		// record allocations that are new or larger
+		for (int p = 0; p < projects.size(); p++) {
+			for (Map.Entry<Donation, Integer> entry : actual.get(p)
+					.entrySet()) {
+				int d = id(entry.getKey());
+				int amount = entry.getValue() - current.allocation(p, d);
+				if (amount > 0) {
+					append(ALLOCATE, d, p, -1, amount);
+				}
+			}
+		}
+	}
+
+	/**
+	 * @postcondition: returns the number of events recorded so far.
+	 */
+	public synchronized long sequence() {
+		return current.sequence();
+	}
+
+	/**
+	 * @postcondition: writes every event recorded so far to the ledger file
+	 *                 and forces it to disk. If another thread's commit has
+	 *                 already forced those events, returns without forcing
+	 *                 again.
+	 */
+	public void commit() throws IOException {
+		long target;
+		synchronized (this) {
+			flush();
+			target = written;
+		}
+		synchronized (forceLock) {
+			if (forced >= target) {
+				return;
+			}
+			long upTo;
+			synchronized (this) {
+				flush();
+				upTo = written;
+			}
+			channel.force(false);
+			forced = upTo;
+		}
+	}
+
+	/**
+	 * @postcondition: commits and closes the ledger.
+	 */
+	@Override
+	public void close() throws IOException {
+		try {
+			commit();
+		} finally {
+			channel.close();
+		}
+	}
+
+	/**
+	 * @precondition: 0 <= sequence <= sequence()
+	 * @postcondition: returns the state of the allocations after the given
+	 *                 number of events, rebuilt from the nearest checkpoint
+	 *                 at or before it and the events that follow.
+	 */
+	public synchronized State stateAt(long sequence) throws IOException {
+		assert 0 <= sequence && (current == null || sequence <= sequence());
+		flush();
+		State state = nearestCheckpoint(sequence);
+		replay(state, sequence);
+		return state;
+	}
+
+	/**
+	 * @postcondition: returns a copy of the current state of the allocations.
+	 */
+	public synchronized State currentState() {
+		return current.copy();
+	}
+
+	/**
+	 * appends an event, applying it to the current state and writing the
+	 * buffered events (and a checkpoint) when due
+	 */
+	private void append(int type, int donation, int project, int source,
+			int amount) throws IOException {
+		buffer.putInt(type).putInt(donation).putInt(project).putInt(source)
+				.putInt(amount);
+		current.apply(type, donation, project, source, amount);
+		if (!buffer.hasRemaining()) {
+			flush();
+		}
+		if (checkpointInterval > 0
+				&& current.sequence() % checkpointInterval == 0) {
+			flush();
+			writeCheckpoint(current);
+		}
+	}
+
+	/**
+	 * writes the buffered events to the channel
+	 */
+	private void flush() throws IOException {
+		buffer.flip();
+		written = written + buffer.remaining() / EVENT_SIZE;
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+		buffer.clear();
+	}
+
+	/**
+	 * returns the id of a donation of the instance
+	 */
+	private int id(Donation donation) {
+		Integer id = donationIds.get(donation);
+		assert id != null;
+		return id;
+	}
+
+	/**
+	 * returns the id of a project of the instance
+	 */
+	private int id(Project project) {
+		Integer id = projectIds.get(project);
+		assert id != null;
+		return id;
+	}
+
+	/**
+	 * returns the state before any event
+	 */
+	private State initialState() {
+		int[] unspent = new int[donations.size()];
+		for (int i = 0; i < unspent.length; i++) {
+			unspent[i] = donations.get(i).getTotal();
+		}
+		return new State(unspent);
+	}
+
+	/**
+	 * returns the file holding the checkpoint after the given number of events
+	 */
+	private File checkpointFile(long sequence) {
+		return new File(file.getPath() + "." + sequence + ".checkpoint");
+	}
+
+	/**
+	 * writes a compacted copy of the given state beside the ledger file
+	 */
+	private void writeCheckpoint(State state) throws IOException {
+		AllocationTable table = state.allocations;
+		ByteBuffer out = ByteBuffer.allocate(20 + 4 * state.unspent.length
+				+ 12 * table.size);
+		out.putInt(CHECKPOINT_MAGIC).putLong(state.sequence)
+				.putInt(state.unspent.length).putInt(table.size);
+		for (int u : state.unspent) {
+			out.putInt(u);
+		}
+		for (int slot = 0; slot < table.keys.length; slot++) {
+			if (table.values[slot] > 0) {
+				out.putLong(table.keys[slot]).putInt(table.values[slot]);
+			}
+		}
+		out.flip();
+		// write to a temporary file first so a checkpoint is never partial
+		File temporary = new File(checkpointFile(state.sequence).getPath()
+				+ ".tmp");
+		FileChannel checkpoint = new FileOutputStream(temporary).getChannel();
+		try {
+			writeFully(checkpoint, out, 0);
+			checkpoint.force(false);
+		} finally {
+			checkpoint.close();
+		}
+		if (!temporary.renameTo(checkpointFile(state.sequence))) {
+			throw new IOException("could not write checkpoint "
+					+ checkpointFile(state.sequence));
+		}
+	}
+
+	/**
+	 * returns the state in the latest checkpoint at or before the given
+	 * number of events, or the initial state if there is none
+	 */
+	private State nearestCheckpoint(long sequence) throws IOException {
+		if (checkpointInterval > 0) {
+			long s = sequence - sequence % checkpointInterval;
+			for (; s > 0; s = s - checkpointInterval) {
+				File checkpoint = checkpointFile(s);
+				if (checkpoint.exists()) {
+					return readCheckpoint(checkpoint);
+				}
+			}
+		}
+		return initialState();
+	}
+
+	/**
+	 * reads a checkpoint written by writeCheckpoint
+	 */
+	private State readCheckpoint(File checkpoint) throws IOException {
+		FileChannel in = new FileInputStream(checkpoint).getChannel();
+		try {
+			ByteBuffer data = ByteBuffer.allocate((int) in.size());
+			while (data.hasRemaining() && in.read(data) >= 0) {
+			}
+			data.flip();
+			if (data.remaining() < 20 || data.getInt() != CHECKPOINT_MAGIC) {
+				throw new IOException("not a checkpoint: " + checkpoint);
+			}
+			long sequence = data.getLong();
+			int[] unspent = new int[data.getInt()];
+			int entries = data.getInt();
+			if (unspent.length != donations.size()) {
+				throw new IOException("checkpoint is for another instance: "
+						+ checkpoint);
+			}
+			for (int i = 0; i < unspent.length; i++) {
+				unspent[i] = data.getInt();
+			}
+			State state = new State(unspent);
+			state.sequence = sequence;
+			for (int i = 0; i < entries; i++) {
+				long key = data.getLong();
+				state.allocations.add(key, data.getInt());
+			}
+			return state;
+		} catch (BufferUnderflowException e) {
+			throw new IOException("truncated checkpoint: " + checkpoint, e);
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * applies the events after state.sequence() up to the given number of
+	 * events to the state
+	 */
+	private void replay(State state, long sequence) throws IOException {
+		ByteBuffer in = ByteBuffer.allocateDirect(16 * BATCH_SIZE * EVENT_SIZE);
+		long position = HEADER_SIZE + state.sequence * EVENT_SIZE;
+		long end = HEADER_SIZE + sequence * EVENT_SIZE;
+		while (position < end) {
+			in.clear();
+			if (end - position < in.capacity()) {
+				in.limit((int) (end - position));
+			}
+			int read = channel.read(in, position);
+			if (read < 0) {
+				throw new IOException("ledger ends early: " + file);
+			}
+			position = position + read;
+			in.flip();
+			while (in.remaining() >= EVENT_SIZE) {
+				state.apply(in.getInt(), in.getInt(), in.getInt(),
+						in.getInt(), in.getInt());
+			}
+			// leave a partly read event for the next read
+			position = position - in.remaining();
+		}
+	}
+
+	/**
+	 * writes all of data to the channel at the given position
+	 */
+	private static void writeFully(FileChannel channel, ByteBuffer data,
+			long position) throws IOException {
+		while (data.hasRemaining()) {
+			position = position + channel.write(data, position);
+		}
+	}
+
+	/**
+	 * The allocations of an instance after some number of events: the unspent
+	 * amount of each donation and the amount of each donation allocated to
+	 * each project.
+	 */
+	public static class State {
+
+		// number of events applied
+		private long sequence;
+		// unspent amount of each donation
+		private int[] unspent;
+		// amount allocated by (project, donation)
+		private AllocationTable allocations;
+
+		private State(int[] unspent) {
+			this.unspent = unspent;
+			allocations = new AllocationTable();
+		}
+
+		/**
+		 * @postcondition: returns the number of events this state follows.
+		 */
+		public long sequence() {
+			return sequence;
+		}
+
+		/**
+		 * @postcondition: returns the unspent amount of the donation with the
+		 *                 given position in the instance.
+		 */
+		public int unspent(int donation) {
+			return unspent[donation];
+		}
+
+		/**
+		 * @postcondition: returns the amount of the donation with the given
+		 *                 position allocated to the project with the given
+		 *                 position.
+		 */
+		public int allocation(int project, int donation) {
+			return allocations.get(key(project, donation));
+		}
+
+		/**
+		 * @precondition: ledger was opened for the instance this state
+		 *                belongs to
+		 * @postcondition: replaces the allocations of the ledger's instance
+		 *                 with those of this state. (The change is not
+		 *                 itself recorded; use reconcile to record it.)
+		 */
+		public void applyTo(Ledger ledger) {
+			for (Project p : ledger.projects) {
+				p.deallocateAll();
+			}
+			for (int slot = 0; slot < allocations.keys.length; slot++) {
+				if (allocations.values[slot] > 0) {
+					long key = allocations.keys[slot];
+					ledger.projects.get((int) (key >>> 32)).allocate(
+							ledger.donations.get((int) key),
+							allocations.values[slot]);
+				}
+			}
+		}
+
+		/**
+		 * applies one event to this state
+		 */
+		private void apply(int type, int donation, int project, int source,
+				int amount) {
+			switch (type) {
+			case ALLOCATE:
+				unspent[donation] -= amount;
+				allocations.add(key(project, donation), amount);
+				break;
+			case DEALLOCATE:
+				unspent[donation] += amount;
+				allocations.add(key(project, donation), -amount);
+				break;
+			case MOVE:
+				allocations.add(key(source, donation), -amount);
+				allocations.add(key(project, donation), amount);
+				break;
+			default:
+				throw new IllegalStateException("unknown event type " + type);
+			}
+			sequence++;
+		}
+
+		/**
+		 * returns a copy of this state
+		 */
+		private State copy() {
+			State copy = new State(unspent.clone());
+			copy.sequence = sequence;
+			copy.allocations.keys = allocations.keys.clone();
+			copy.allocations.values = allocations.values.clone();
+			copy.allocations.size = allocations.size;
+			copy.allocations.used = allocations.used;
+			return copy;
+		}
+
+		/**
+		 * returns the table key for a (project, donation) pair
+		 */
+		private static long key(int project, int donation) {
+			return ((long) project << 32) | (donation & 0xffffffffL);
+		}
+	}
+
+	/**
+	 * An open-addressing table of allocated amounts keyed by (project,
+	 * donation), avoiding a boxed entry per allocation so that replay stays
+	 * fast. An amount of zero means no allocation; slots whose amount drops to
+	 * zero are dropped when the table is resized.
+	 */
+	private static class AllocationTable {
+
+		// marks an empty slot
+		private static final long EMPTY = -1;
+
+		long[] keys;
+		int[] values;
+		// number of slots with a non-zero amount
+		int size;
+		// number of slots with a key
+		int used;
+
+		AllocationTable() {
+			keys = new long[16];
+			Arrays.fill(keys, EMPTY);
+			values = new int[16];
+		}
+
+		/**
+		 * returns the amount stored for key (0 if none)
+		 */
+		int get(long key) {
+			int mask = keys.length - 1;
+			int slot = hash(key) & mask;
+			while (keys[slot] != EMPTY) {
+				if (keys[slot] == key) {
+					return values[slot];
+				}
+				slot = (slot + 1) & mask;
+			}
+			return 0;
+		}
+
+		/**
+		 * adds delta to the amount stored for key
+		 */
+		void add(long key, int delta) {
+			int mask = keys.length - 1;
+			int slot = hash(key) & mask;
+			while (keys[slot] != EMPTY && keys[slot] != key) {
+				slot = (slot + 1) & mask;
+			}
+			if (keys[slot] == EMPTY) {
+				keys[slot] = key;
+				used++;
+			}
+			int before = values[slot];
+			values[slot] = before + delta;
+			size = size + (values[slot] != 0 ? 1 : 0) - (before != 0 ? 1 : 0);
+			if (used * 2 > keys.length) {
+				resize();
+			}
+		}
+
+		/**
+		 * rehashes the non-zero amounts into a table sized for them
+		 */
+		private void resize() {
+			long[] oldKeys = keys;
+			int[] oldValues = values;
+			int capacity = 16;
+			while (capacity < size * 4) {
+				capacity = capacity * 2;
+			}
+			keys = new long[capacity];
+			Arrays.fill(keys, EMPTY);
+			values = new int[capacity];
+			size = 0;
+			used = 0;
+			for (int slot = 0; slot < oldKeys.length; slot++) {
+				if (oldValues[slot] != 0) {
+					add(oldKeys[slot], oldValues[slot]);
+				}
+			}
+		}
+
+		/**
+		 * returns a well-mixed hash of key
+		 */
+		private static int hash(long key) {
+			key = key * 0x9e3779b97f4a7c15L;
+			return (int) (key ^ (key >>> 32));
+		}
+	}
+}
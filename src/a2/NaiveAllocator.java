@@ -64,4 +64,389 @@ public class NaiveAllocator {
 		return false;
 	}
 
+	/**
+	 * @precondition: as for canAllocate
+	 * @postcondition: as for canAllocate. The same search is made, but
+	 *                 states that have already failed are remembered, and
+	 *                 branches that the remaining donations could not
+	 *                 complete are cut off, so much larger instances can be
+	 *                 solved exactly.
+	 */
+	public static boolean canAllocateExact(List<Donation> donations,
+			Set<Project> projects) {
+		Search search = new Search(donations, projects);
+		if (!search.canAllocate(0, 0)) {
+			return false;
+		}
+		search.allocate();
+		return true;
+	}
+
+	/**
+	 * The state of an exact search over a fixed instance.
+	 * 
+	 * Like canAllocateHelper, donation i is spent in turn on the projects it
+	 * can be used for that still need funding, and donation i+1 is only
+	 * considered once donation i is spent or none of its projects need
+	 * funding. Since the order in which dollars of donation i are allocated to
+	 * its projects doesn't matter, they are allocated in project order: the
+	 * search decides how much of donation i goes to its k-th project before
+	 * moving on to its (k+1)-th. The state of the search is then determined by
+	 * (i, k, the unspent amount of donation i, the needed funds of each
+	 * project), since donations after i haven't been touched.
+	 * 
+	 * States that fail are kept (up to about TABLE_BYTES of them, least
+	 * recently used first out) in a table keyed by a Zobrist hash of that
+	 * state, and a state is cut off when the donations from i on couldn't
+	 * cover what the projects still need: in total, for any one project, or
+	 * for any group of projects that no remaining donation connects to the
+	 * others.
+	 */
+	private static class Search {
+
+		// approximate memory to use for remembering failed states, and the
+		// memory each one takes besides its copy of needed
+		private static final long TABLE_BYTES = 64L << 20;
+		private static final int ENTRY_OVERHEAD = 96;
+
+		// donations and projects of the instance
+		private List<Donation> donations;
+		private List<Project> projects;
+		// eligible[i] are the indices of projects donation i can be used for
+		private int[][] eligible;
+		// allocated[i][k] is the amount of donation i given to eligible[i][k]
+		private int[][] allocated;
+		// funds each project still needs
+		private int[] needed;
+		// unspent amount of each donation
+		private int[] unspent;
+		// total of the donations from i on (with one extra entry of 0)
+		private long[] suffix;
+		// donors[p] are the donations that can be used for project p, in
+		// order, and supply[p][j] the total of donors[p][j..]
+		private int[][] donors;
+		private long[][] supply;
+		// sum of needed
+		private long totalNeeded;
+		// random Zobrist keys for each project and for donation i
+		private long[] projectKeys;
+		private long donationKey;
+		// Zobrist hash of needed
+		private long hash;
+		// failed states, and the most that are kept
+		private Map<State, Boolean> failed;
+		private final int tableSize;
+		// union-find over the projects for canCover, with the supply and
+		// need of the group each root stands for
+		private int[] group;
+		private long[] groupSupply;
+		private long[] groupNeed;
+
+		Search(List<Donation> donations, Set<Project> projects) {
+			this.donations = donations;
+			this.projects = new ArrayList<Project>(projects);
+			int dn = donations.size();
+			int pn = projects.size();
+			Random random = new Random(dn * 31L + pn);
+			Map<Project, Integer> index = new HashMap<Project, Integer>();
+			needed = new int[pn];
+			projectKeys = new long[pn];
+			for (int p = 0; p < pn; p++) {
+				Project project = this.projects.get(p);
+				index.put(project, p);
+				needed[p] = project.neededFunds();
+				totalNeeded = totalNeeded + needed[p];
+				projectKeys[p] = random.nextLong();
+				hash = hash ^ zobrist(projectKeys[p], needed[p]);
+			}
+			donationKey = random.nextLong();
+
+			eligible = new int[dn][];
+			allocated = new int[dn][];
+			unspent = new int[dn];
+			suffix = new long[dn + 1];
+			List<List<Integer>> donorLists = new ArrayList<List<Integer>>();
+			for (int p = 0; p < pn; p++) {
+				donorLists.add(new ArrayList<Integer>());
+			}
+			for (int i = 0; i < dn; i++) {
+				Donation d = donations.get(i);
+				unspent[i] = d.getUnspent();
+				List<Integer> list = new ArrayList<Integer>();
+				for (Project project : d.getProjects()) {
+					if (index.containsKey(project)) {
+						list.add(index.get(project));
+					}
+				}
+				Collections.sort(list);
+				eligible[i] = new int[list.size()];
+				for (int k = 0; k < list.size(); k++) {
+					eligible[i][k] = list.get(k);
+					donorLists.get(list.get(k)).add(i);
+				}
+				allocated[i] = new int[list.size()];
+			}
+			for (int i = dn - 1; i >= 0; i--) {
+				suffix[i] = suffix[i + 1] + unspent[i];
+			}
+			donors = new int[pn][];
+			supply = new long[pn][];
+			for (int p = 0; p < pn; p++) {
+				List<Integer> list = donorLists.get(p);
+				donors[p] = new int[list.size()];
+				supply[p] = new long[list.size() + 1];
+				for (int j = list.size() - 1; j >= 0; j--) {
+					donors[p][j] = list.get(j);
+					supply[p][j] = supply[p][j + 1] + unspent[list.get(j)];
+				}
+			}
+			group = new int[pn];
+			groupSupply = new long[pn];
+			groupNeed = new long[pn];
+			// each state keeps a copy of needed, so bound the table by memory
+			tableSize = (int) Math.max(1, TABLE_BYTES
+					/ (ENTRY_OVERHEAD + 4L * pn));
+			failed = new LinkedHashMap<State, Boolean>(1024, 0.75f, true) {
+				@Override
+				protected boolean removeEldestEntry(
+						Map.Entry<State, Boolean> eldest) {
+					return size() > tableSize;
+				}
+			};
+		}
+
+		/**
+		 * returns true if the projects can be completely funded from the
+		 * current state, in which the first k projects of donation i have been
+		 * decided, leaving the amounts that do so in allocated
+		 */
+		boolean canAllocate(int i, int k) {
+			// skip projects and donations that have nothing left to decide
+			while (true) {
+				if (totalNeeded == 0) {
+					return true;
+				}
+				if (i == donations.size()) {
+					return false;
+				}
+				if (k < eligible[i].length && unspent[i] > 0) {
+					if (needed[eligible[i][k]] > 0) {
+						break;
+					}
+					k++;
+				} else if (unspent[i] > 0 && anyNeeded(i)) {
+					// donation i could still fund one of its projects, so
+					// this allocation is no better than one that did
+					return false;
+				} else {
+					i++;
+					k = 0;
+				}
+			}
+			if (!canCover(i, k)) {
+				return false;
+			}
+			State state = new State(this, i, k);
+			// get (rather than containsKey) so the entry counts as recently used
+			if (failed.get(state) != null) {
+				return false;
+			}
+			// try the largest amounts first
+			int p = eligible[i][k];
+			for (int x = Math.min(unspent[i], needed[p]); x >= 0; x--) {
+				give(i, k, x);
+				if (canAllocate(i, k + 1)) {
+					return true;
+				}
+				give(i, k, -x);
+			}
+			failed.put(state, Boolean.TRUE);
+			return false;
+		}
+
+		/**
+		 * allocates x (which may be negative, to take back an allocation)
+		 * from donation i to its k-th project
+		 */
+		private void give(int i, int k, int x) {
+			int p = eligible[i][k];
+			hash = hash ^ zobrist(projectKeys[p], needed[p]);
+			needed[p] = needed[p] - x;
+			hash = hash ^ zobrist(projectKeys[p], needed[p]);
+			unspent[i] = unspent[i] - x;
+			allocated[i][k] = allocated[i][k] + x;
+			totalNeeded = totalNeeded - x;
+		}
+
+		/**
+		 * returns true if one of the projects of donation i still needs funds
+		 */
+		private boolean anyNeeded(int i) {
+			for (int p : eligible[i]) {
+				if (needed[p] > 0) {
+					return true;
+				}
+			}
+			return false;
+		}
+
+		/**
+		 * returns true if the donations from i on could cover the total
+		 * needed, the needs of each project and the needs of each group of
+		 * projects they connect, counting all of what is left of donation i
+		 * for each of its undecided projects
+		 */
+		private boolean canCover(int i, int k) {
+			if (unspent[i] + suffix[i + 1] < totalNeeded) {
+				return false;
+			}
+			for (int p = 0; p < needed.length; p++) {
+				if (needed[p] > 0) {
+					long available = supply[p][firstDonorAfter(p, i)];
+					if (Arrays.binarySearch(eligible[i], k,
+							eligible[i].length, p) >= 0) {
+						available = available + unspent[i];
+					}
+					if (available < needed[p]) {
+						return false;
+					}
+				}
+			}
+			return groupsCovered(i, k);
+		}
+
+		/**
+		 * returns true if, for each group of projects still needing funds
+		 * that the donations from i on (the undecided projects of donation i
+		 * only) connect, those donations could cover the group's needs
+		 */
+		private boolean groupsCovered(int i, int k) {
+			for (int p = 0; p < needed.length; p++) {
+				group[p] = p;
+				groupSupply[p] = 0;
+				groupNeed[p] = 0;
+			}
+			for (int j = i; j < eligible.length; j++) {
+				int root = -1;
+				for (int m = j == i ? k : 0; m < eligible[j].length; m++) {
+					int p = eligible[j][m];
+					if (needed[p] > 0) {
+						root = root < 0 ? find(p) : union(root, p);
+					}
+				}
+				// a donation that can't fund anything needed supplies nothing
+				if (root >= 0) {
+					groupSupply[root] = groupSupply[root] + unspent[j];
+				}
+			}
+			for (int p = 0; p < needed.length; p++) {
+				int root = find(p);
+				groupNeed[root] = groupNeed[root] + needed[p];
+			}
+			for (int p = 0; p < needed.length; p++) {
+				if (group[p] == p && groupSupply[p] < groupNeed[p]) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		/**
+		 * returns the root of the group of project p
+		 */
+		private int find(int p) {
+			while (group[p] != p) {
+				group[p] = group[group[p]];
+				p = group[p];
+			}
+			return p;
+		}
+
+		/**
+		 * joins the group with the given root to the group of project p,
+		 * returning the root of the joined group
+		 */
+		private int union(int root, int p) {
+			int other = find(p);
+			if (other == root) {
+				return root;
+			}
+			group[other] = root;
+			groupSupply[root] = groupSupply[root] + groupSupply[other];
+			return root;
+		}
+
+		/**
+		 * returns the position in donors[p] of its first donation after i
+		 */
+		private int firstDonorAfter(int p, int i) {
+			int j = Arrays.binarySearch(donors[p], i + 1);
+			return j >= 0 ? j : -j - 1;
+		}
+
+		/**
+		 * makes the allocations found by a successful search
+		 */
+		void allocate() {
+			for (int i = 0; i < eligible.length; i++) {
+				for (int k = 0; k < eligible[i].length; k++) {
+					if (allocated[i][k] > 0) {
+						projects.get(eligible[i][k]).allocate(
+								donations.get(i), allocated[i][k]);
+					}
+				}
+			}
+		}
+
+		/**
+		 * returns the Zobrist key of an entity with the given random key
+		 * having the given amount
+		 */
+		private static long zobrist(long key, int amount) {
+			long z = key + amount * 0x9e3779b97f4a7c15L;
+			z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+			z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+			return z ^ (z >>> 31);
+		}
+
+		/**
+		 * A state of the search, hashed by its Zobrist hash and compared in
+		 * full so that a hash collision can't cut off a branch.
+		 */
+		private static class State {
+			private final int i;
+			private final int k;
+			private final int unspent;
+			private final int[] needed;
+			private final long hash;
+
+			State(Search search, int i, int k) {
+				this.i = i;
+				this.k = k;
+				unspent = search.unspent[i];
+				needed = search.needed.clone();
+				hash = search.hash
+						^ zobrist(search.donationKey, unspent)
+						^ zobrist(search.donationKey + 1, i)
+						^ zobrist(search.donationKey + 2, k);
+			}
+
+			@Override
+			public int hashCode() {
+				return (int) (hash ^ (hash >>> 32));
+			}
+
+			@Override
+			public boolean equals(Object o) {
+				if (!(o instanceof State)) {
+					return false;
+				}
+				State s = (State) o;
+				return hash == s.hash && i == s.i && k == s.k
+						&& unspent == s.unspent
+						&& Arrays.equals(needed, s.needed);
+			}
+		}
+	}
+
 }
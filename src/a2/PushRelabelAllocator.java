@@ -0,0 +1,417 @@
+package a2;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+public class PushRelabelAllocator {
+
+	// number of donations and projects below which a single thread is used
+	private static final int PARALLEL_THRESHOLD = 4096;
+
+	/**
+	 * @precondition: Neither of the inputs are null or contain null elements.
+	 *                The parameter donations is a list of distinct donations
+	 *                such that for each d in donations, d.getTotal() equals
+	 *                d.getUnspent(); and for each p in projects
+	 *                p.allocatedFunding() equals 0.
+	 * @postcondition: returns false if there no way to completely fund all of
+	 *                 the given projects using the donations, leaving both the
+	 *                 input list of donations and set of projects unmodified;
+	 *                 otherwise returns true and allocates to each project
+	 *                 funding from the donations. The allocation to each
+	 *                 project must be complete and may not violate the
+	 *                 conditions of the donations.
+	 */
+	public static boolean canAllocate(List<Donation> donations,
+			Set<Project> projects) {
+		// small instances aren't worth starting threads for
+		int threads = donations.size() + projects.size() < PARALLEL_THRESHOLD ? 1
+				: Runtime.getRuntime().availableProcessors();
+		return canAllocate(donations, projects, threads);
+	}
+
+	/**
+	 * @precondition: threads > 0 and the inputs satisfy the precondition of
+	 *                canAllocate(donations, projects).
+	 * @postcondition: behaves as canAllocate(donations, projects), solving
+	 *                 the flow network with the given number of worker
+	 *                 threads.
+	 */
+	public static boolean canAllocate(List<Donation> donations,
+			Set<Project> projects, int threads) {
+		assert threads > 0;
+		List<Project> sinks = new ArrayList<Project>(projects);
+		// check that the donations could cover the projects at all
+		long needed = 0;
+		for (Project p : sinks) {
+			needed = needed + p.neededFunds();
+		}
+		long available = 0;
+		for (Donation d : donations) {
+			available = available + d.getUnspent();
+		}
+		if (available < needed) {
+			return false;
+		}
+		Network network = new Network(donations, sinks);
+		if (network.maxFlow(threads) < needed) {
+			return false;
+		}
+		// write the flow on each donation -> project edge back to the projects
+		for (int i = 0; i < donations.size(); i++) {
+			int u = i + 1;
+			for (int e = network.first[u]; e < network.first[u + 1]; e++) {
+				int v = network.head[e];
+				long flow = network.capacity[e]
+						- network.residual.get(e);
+				if (v != Network.SOURCE && flow > 0) {
+					sinks.get(v - donations.size() - 1).allocate(
+							donations.get(i), (int) flow);
+				}
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * A flow network from a source, through the donations and then the
+	 * projects, to a sink. Residual capacities and excesses are atomic so that
+	 * pushes from different nodes may proceed without locks; each node is
+	 * discharged by at most one worker at a time.
+	 */
+	private static class Network {
+
+		// index of the source node
+		static final int SOURCE = 0;
+		// number of discharge operations between global relabels, per node
+		static final int RELABEL_FREQUENCY = 6;
+		// number of discharge operations a worker takes from the shared
+		// budget at a time
+		static final int BUDGET_CHUNK = 256;
+
+		// number of nodes, including the source and the sink
+		final int n;
+		// index of the sink node
+		final int sink;
+		// edges leaving node u are first[u] .. first[u+1]-1
+		final int[] first;
+		// node each edge points to
+		final int[] head;
+		// index of the reverse of each edge
+		final int[] reverse;
+		// original capacity of each edge
+		final long[] capacity;
+		// remaining capacity of each edge
+		final AtomicLongArray residual;
+		// flow that has entered but not yet left each node
+		final AtomicLongArray excess;
+		// height label of each node
+		final AtomicIntegerArray height;
+		// whether each node is currently waiting in (or taken from) a queue
+		final AtomicIntegerArray queued;
+		// number of nodes with queued set
+		final AtomicInteger pending = new AtomicInteger();
+		// remaining discharge operations before the next global relabel
+		final AtomicLong budget = new AtomicLong();
+		// per-worker queues of active nodes
+		List<ConcurrentLinkedDeque<Integer>> queues;
+
+		Network(List<Donation> donations, List<Project> projects) {
+			int dn = donations.size();
+			int pn = projects.size();
+			n = dn + pn + 2;
+			sink = n - 1;
+			// index of each project among the nodes
+			Map<Project, Integer> index = new HashMap<Project, Integer>();
+			for (int j = 0; j < pn; j++) {
+				index.put(projects.get(j), dn + j + 1);
+			}
+			// count the edges at each node
+			int[] degree = new int[n];
+			List<int[]> edges = new ArrayList<int[]>();
+			List<Long> capacities = new ArrayList<Long>();
+			for (int i = 0; i < dn; i++) {
+				Donation d = donations.get(i);
+				addEdge(edges, capacities, degree, SOURCE, i + 1,
+						d.getUnspent());
+				for (Project p : d.getProjects()) {
+					if (index.containsKey(p)) {
+						addEdge(edges, capacities, degree, i + 1, index.get(p),
+								d.getUnspent());
+					}
+				}
+			}
+			for (int j = 0; j < pn; j++) {
+				addEdge(edges, capacities, degree, dn + j + 1, sink, projects
+						.get(j).neededFunds());
+			}
+			// lay the edges out contiguously by their tail node
+			first = new int[n + 1];
+			for (int u = 0; u < n; u++) {
+				first[u + 1] = first[u] + degree[u];
+			}
+			int m = first[n];
+			head = new int[m];
+			reverse = new int[m];
+			capacity = new long[m];
+			int[] next = Arrays.copyOf(first, n);
+			for (int k = 0; k < edges.size(); k++) {
+				int u = edges.get(k)[0];
+				int v = edges.get(k)[1];
+				int forward = next[u]++;
+				int backward = next[v]++;
+				head[forward] = v;
+				head[backward] = u;
+				reverse[forward] = backward;
+				reverse[backward] = forward;
+				capacity[forward] = capacities.get(k);
+			}
+			residual = new AtomicLongArray(capacity);
+			excess = new AtomicLongArray(n);
+			height = new AtomicIntegerArray(n);
+			queued = new AtomicIntegerArray(n);
+		}
+
+		/**
+		 * records an edge from u to v (and its reverse) with the given capacity
+		 */
+		private static void addEdge(List<int[]> edges, List<Long> capacities,
+				int[] degree, int u, int v, long c) {
+			edges.add(new int[] { u, v });
+			capacities.add(c);
+			degree[u]++;
+			degree[v]++;
+		}
+
+		/**
+		 * returns the value of a maximum flow from the source to the sink,
+		 * leaving that flow in the residual capacities. Nodes are only
+		 * discharged while they can still reach the sink, which is enough to
+		 * find the value; excess stranded at the projects is then cancelled
+		 * back along the donation edges so the remaining flow is valid.
+		 */
+		long maxFlow(int threads) {
+			queues = new ArrayList<ConcurrentLinkedDeque<Integer>>();
+			for (int w = 0; w < threads; w++) {
+				queues.add(new ConcurrentLinkedDeque<Integer>());
+			}
+			// saturate every edge leaving the source
+			height.set(SOURCE, n);
+			for (int e = first[SOURCE]; e < first[SOURCE + 1]; e++) {
+				push(e, residual.get(e), 0);
+			}
+			// a single worker runs on the calling thread
+			ExecutorService executor = threads == 1 ? null : Executors
+					.newFixedThreadPool(threads);
+			try {
+				List<Callable<Void>> workers = new ArrayList<Callable<Void>>();
+				for (int w = 0; w < threads; w++) {
+					workers.add(new Worker(w));
+				}
+				// alternate serial global relabels with parallel discharging,
+				// until a global relabel finds no active node
+				while (true) {
+					globalRelabel();
+					if (pending.get() == 0) {
+						break;
+					}
+					budget.set((long) RELABEL_FREQUENCY * n);
+					if (executor == null) {
+						new Worker(0).call();
+						continue;
+					}
+					for (Future<Void> f : executor.invokeAll(workers)) {
+						f.get();
+					}
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException(e);
+			} catch (ExecutionException e) {
+				throw new IllegalStateException(e.getCause());
+			} finally {
+				if (executor != null) {
+					executor.shutdownNow();
+				}
+			}
+			returnExcess();
+			return excess.get(sink);
+		}
+
+		/**
+		 * cancels the flow into each project that could not be passed on to
+		 * the sink. (Excess left at a donation just means that less of it is
+		 * spent, so it does not need to be returned to the source.)
+		 */
+		private void returnExcess() {
+			for (int u = SOURCE + 1; u < sink; u++) {
+				for (int e = first[u]; e < first[u + 1]; e++) {
+					// a reverse edge back to a donation carries flow to cancel
+					if (excess.get(u) > 0 && capacity[e] == 0
+							&& head[e] != SOURCE && residual.get(e) > 0) {
+						push(e, Math.min(excess.get(u), residual.get(e)), -1);
+					}
+				}
+			}
+		}
+
+		/**
+		 * pushes amount along edge e, activating its head in the given queue
+		 * (or in none if worker is negative)
+		 */
+		private void push(int e, long amount, int worker) {
+			int u = head[reverse[e]];
+			int v = head[e];
+			residual.addAndGet(e, -amount);
+			residual.addAndGet(reverse[e], amount);
+			excess.addAndGet(u, -amount);
+			excess.addAndGet(v, amount);
+			if (worker >= 0 && v != SOURCE && v != sink
+					&& height.get(v) < n && queued.compareAndSet(v, 0, 1)) {
+				pending.incrementAndGet();
+				queues.get(worker).addLast(v);
+			}
+		}
+
+		/**
+		 * pushes from node u to every lower neighbour, relabelling it above
+		 * its lowest residual neighbour whenever excess remains, until it has
+		 * no excess, it can no longer reach the sink or the worker's budget
+		 * runs out
+		 */
+		private void discharge(int u, Worker worker) {
+			while (excess.get(u) > 0 && height.get(u) < n && worker.spend()) {
+				int lowestHeight = Integer.MAX_VALUE;
+				for (int e = first[u]; e < first[u + 1]
+						&& excess.get(u) > 0; e++) {
+					long r = residual.get(e);
+					if (r > 0) {
+						int h = height.get(head[e]);
+						if (height.get(u) > h) {
+							push(e, Math.min(excess.get(u), r), worker.id);
+						} else if (h < lowestHeight) {
+							lowestHeight = h;
+						}
+					}
+				}
+				if (excess.get(u) > 0) {
+					if (lowestHeight == Integer.MAX_VALUE) {
+						return;
+					}
+					height.set(u, lowestHeight + 1);
+				}
+			}
+		}
+
+		/**
+		 * sets every height to the exact residual distance to the sink, or to
+		 * n for nodes that can no longer reach the sink, and activates every
+		 * node with excess that can reach the sink but isn't active. (A push
+		 * to a node that another worker has just relabelled to n doesn't
+		 * activate it, so without this its excess could be stranded.)
+		 */
+		private void globalRelabel() {
+			for (int u = 0; u < n; u++) {
+				height.set(u, n);
+			}
+			height.set(sink, 0);
+			// breadth-first search backwards along residual edges from the sink
+			Deque<Integer> queue = new ArrayDeque<Integer>();
+			queue.add(sink);
+			while (!queue.isEmpty()) {
+				int v = queue.poll();
+				for (int e = first[v]; e < first[v + 1]; e++) {
+					int u = head[e];
+					if (u != SOURCE && height.get(u) == n
+							&& residual.get(reverse[e]) > 0) {
+						height.set(u, height.get(v) + 1);
+						queue.add(u);
+					}
+				}
+			}
+			for (int u = SOURCE + 1; u < sink; u++) {
+				if (excess.get(u) > 0 && height.get(u) < n
+						&& queued.compareAndSet(u, 0, 1)) {
+					pending.incrementAndGet();
+					queues.get(u % queues.size()).addLast(u);
+				}
+			}
+		}
+
+		/**
+		 * A worker that discharges active nodes from its own queue, stealing
+		 * from the other queues when its own is empty.
+		 */
+		private class Worker implements Callable<Void> {
+
+			// index of this worker's queue
+			private final int id;
+			// discharge operations taken from the shared budget but not yet
+			// used
+			private long local;
+
+			Worker(int id) {
+				this.id = id;
+			}
+
+			@Override
+			public Void call() {
+				// anything left over from the last phase belongs to its budget
+				local = 0;
+				while (pending.get() > 0 && (local > 0 || budget.get() > 0)) {
+					Integer u = take();
+					if (u == null) {
+						Thread.yield();
+						continue;
+					}
+					discharge(u, this);
+					if (excess.get(u) > 0 && height.get(u) < n) {
+						// budget ran out, leave u for the next phase
+						queues.get(id).addLast(u);
+						continue;
+					}
+					// deactivate u, unless it received more flow meanwhile
+					queued.set(u, 0);
+					if (excess.get(u) > 0 && height.get(u) < n
+							&& queued.compareAndSet(u, 0, 1)) {
+						queues.get(id).addLast(u);
+					} else {
+						pending.decrementAndGet();
+					}
+				}
+				return null;
+			}
+
+			/**
+			 * returns true and uses up one discharge operation if the budget
+			 * allows one, taking a chunk from the shared budget when this
+			 * worker's own runs out
+			 */
+			private boolean spend() {
+				if (local == 0) {
+					long left = budget.getAndAdd(-BUDGET_CHUNK);
+					if (left <= 0) {
+						return false;
+					}
+					local = Math.min(left, BUDGET_CHUNK);
+				}
+				local--;
+				return true;
+			}
+
+			/**
+			 * returns the next active node for this worker, or null if none
+			 * could be found
+			 */
+			private Integer take() {
+				Integer u = queues.get(id).pollFirst();
+				for (int w = 1; u == null && w < queues.size(); w++) {
+					u = queues.get((id + w) % queues.size()).pollLast();
+				}
+				return u;
+			}
+		}
+	}
+
+}
@@ -0,0 +1,411 @@
+package a2;
+
+import java.io.*;
+import java.net.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * A local server that keeps instances resident and answers allocation queries
+ * about them over a line-based socket protocol, so that clients don't have to
+ * rebuild the projects and donations for every question.
+ *
+ * Usage: java a2.QueryServer [-port N] [-allocator NAME] [FILE...]
+ *
+ * Each request is one line and gets one line in reply, starting with "ok" or
+ * "error". The requests are
+ *
+ * 	instances
+ *
+ * 	fundable INSTANCE
+ *
+ * 	allocation INSTANCE PROJECT
+ *
+ * 	needed INSTANCE PROJECT
+ *
+ * 	unspent INSTANCE DONATION
+ *
+ * 	load FILE
+ *
+ * 	project INSTANCE NAME COST
+ *
+ * 	donation INSTANCE NAME TOTAL PROJECT...
+ *
+ * 	solve INSTANCE [ALLOCATOR]
+ *
+ * 	drop INSTANCE
+ *
+ * The first five are read queries, answered straight from the most recently
+ * published snapshot without waiting for anything else. The rest change the
+ * instances, and are run one at a time on a single writer thread which
+ * publishes a new snapshot after each of them: a project or donation only
+ * adds its own entry to a copy of the previous snapshot, while the others
+ * build the snapshot of the instance afresh. (A fundable query for an
+ * instance that hasn't been solved since it last changed is also passed to
+ * the writer, to solve it.)
+ */
+
+public class QueryServer {
+
+	// port the server listens on by default
+	private static final int DEFAULT_PORT = 7407;
+
+	// resident instances by name; only touched by the writer thread
+	private Map<String, Instance> instances;
+	// solution state of each resident instance (null if unsolved); only
+	// touched by the writer thread
+	private Map<String, Boolean> fundable;
+	// allocator for solves that don't name one
+	private Allocator allocator;
+	// runs every mutation and solve, in order
+	private ExecutorService writer;
+	// what the read queries see; replaced (never changed) by the writer
+	private volatile Map<String, Snapshot> snapshots;
+
+	/**
+	 * A read-only copy of the state of an instance at some point.
+	 */
+	private static class Snapshot {
+		// whether the instance can be funded, or null if it isn't known
+		Boolean fundable;
+		// needed funds of each project
+		Map<String, Integer> needed = new HashMap<String, Integer>();
+		// allocation to each project, as a reply line
+		Map<String, String> allocations = new HashMap<String, String>();
+		// unspent amount of each donation
+		Map<String, Integer> unspent = new HashMap<String, Integer>();
+
+		Snapshot() {
+		}
+
+		/**
+		 * creates a copy of the given snapshot whose solution state isn't
+		 * known, sharing its replies rather than building them again
+		 */
+		Snapshot(Snapshot previous) {
+			needed.putAll(previous.needed);
+			allocations.putAll(previous.allocations);
+			unspent.putAll(previous.unspent);
+		}
+	}
+
+	/**
+	 * @precondition: allocator != null
+	 * @postcondition: creates a server with no instances that solves with the
+	 *                 given allocator unless a request names another.
+	 */
+	public QueryServer(Allocator allocator) {
+		assert allocator != null;
+		this.allocator = allocator;
+		instances = new HashMap<String, Instance>();
+		fundable = new HashMap<String, Boolean>();
+		writer = Executors.newSingleThreadExecutor();
+		snapshots = Collections.emptyMap();
+	}
+
+	/**
+	 * @precondition: request != null
+	 * @postcondition: carries out the request and returns the (single line)
+	 *                 reply to it.
+	 */
+	public String handle(String request) {
+		final String[] words = request.trim().split("\\s+");
+		try {
+			String reply = query(words);
+			if (reply != null) {
+				return reply;
+			}
+			return writer.submit(new Callable<String>() {
+				@Override
+				public String call() throws IOException {
+					return update(words);
+				}
+			}).get();
+		} catch (ExecutionException e) {
+			return "error " + e.getCause().getMessage();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return "error interrupted";
+		} catch (RejectedExecutionException e) {
+			return "error server is shutting down";
+		}
+	}
+
+	/**
+	 * returns the reply to a read query using the current snapshots, or null
+	 * if the request has to be passed to the writer
+	 */
+	private String query(String[] words) {
+		Map<String, Snapshot> current = snapshots;
+		if (words[0].equals("instances") && words.length == 1) {
+			return ("ok " + join(new TreeSet<String>(current.keySet())))
+					.trim();
+		}
+		if (words.length < 2 || !isQuery(words[0])) {
+			return null;
+		}
+		Snapshot snapshot = current.get(words[1]);
+		if (snapshot == null) {
+			return "error unknown instance " + words[1];
+		}
+		if (words[0].equals("fundable") && words.length == 2) {
+			return snapshot.fundable == null ? null : "ok "
+					+ snapshot.fundable;
+		}
+		if (words.length != 3) {
+			return "error malformed request";
+		}
+		Object answer;
+		if (words[0].equals("allocation")) {
+			answer = snapshot.allocations.get(words[2]);
+		} else if (words[0].equals("needed")) {
+			answer = snapshot.needed.get(words[2]);
+		} else {
+			answer = snapshot.unspent.get(words[2]);
+		}
+		if (answer == null) {
+			return "error unknown name " + words[2];
+		}
+		return ("ok " + answer).trim();
+	}
+
+	/**
+	 * returns true iff the given request is answered from the snapshots
+	 */
+	private static boolean isQuery(String request) {
+		return request.equals("fundable") || request.equals("allocation")
+				|| request.equals("needed") || request.equals("unspent");
+	}
+
+	/**
+	 * carries out a request that changes (or solves) the instances and
+	 * publishes new snapshots; only called on the writer thread
+	 */
+	private String update(String[] words) throws IOException {
+		String reply;
+		if (words[0].equals("load") && words.length == 2) {
+			List<String> loaded = load(words[1]);
+			publish(loaded);
+			return ("ok " + join(loaded)).trim();
+		} else if (words.length < 2) {
+			throw new IOException("malformed request");
+		} else if (!instances.containsKey(words[1])) {
+			throw new IOException("unknown instance " + words[1]);
+		} else if (words[0].equals("solve") && words.length <= 3) {
+			Allocator chosen = words.length == 3 ? Allocator
+					.forName(words[2]) : null;
+			reply = "ok " + solve(words[1], chosen);
+		} else if (words[0].equals("fundable") && words.length == 2) {
+			reply = "ok "
+					+ (fundable.get(words[1]) != null ? fundable
+							.get(words[1]) : solve(words[1], null));
+		} else if (words[0].equals("drop") && words.length == 2) {
+			instances.remove(words[1]);
+			fundable.remove(words[1]);
+			reply = "ok";
+		} else if (words[0].equals("project")
+				|| words[0].equals("donation")) {
+			// add the declaration through the instance reader
+			Instance instance = instances.get(words[1]);
+			StringBuilder line = new StringBuilder(words[0]);
+			for (int i = 2; i < words.length; i++) {
+				line.append(' ').append(words[i]);
+			}
+			instance.declare(line.toString());
+			fundable.put(words[1], null);
+			publishDeclared(words[1], words[0], words[2]);
+			return "ok";
+		} else {
+			throw new IOException("malformed request");
+		}
+		publish(Collections.singleton(words[1]));
+		return reply;
+	}
+
+	/**
+	 * reads the instances in a file, replacing any resident ones of the same
+	 * name, and returns their names
+	 */
+	private List<String> load(String file) throws IOException {
+		List<Instance> loaded = new ArrayList<Instance>();
+		BufferedReader in = new BufferedReader(new FileReader(file));
+		try {
+			Instance instance;
+			while ((instance = Instance.read(in, file + "#" + loaded.size()))
+					!= null) {
+				loaded.add(instance);
+			}
+		} finally {
+			in.close();
+		}
+		// only make the instances resident once the whole file has been read
+		List<String> names = new ArrayList<String>();
+		for (Instance instance : loaded) {
+			instances.put(instance.getName(), instance);
+			fundable.put(instance.getName(), null);
+			names.add(instance.getName());
+		}
+		return names;
+	}
+
+	/**
+	 * solves an instance from scratch with the given allocator (or the
+	 * default one if it's null) and returns the result
+	 */
+	private boolean solve(String name, Allocator chosen) {
+		Instance instance = instances.get(name);
+		for (Project p : instance.getProjects()) {
+			p.deallocateAll();
+		}
+		boolean result = chosen == null ? instance.solve(allocator)
+				: chosen.canAllocate(instance.getDonations(),
+						instance.getProjects());
+		fundable.put(name, result);
+		return result;
+	}
+
+	/**
+	 * replaces the snapshots read by queries with ones in which the named
+	 * instances have been copied afresh (or removed if they are no longer
+	 * resident)
+	 */
+	private void publish(Collection<String> names) {
+		Map<String, Snapshot> next = new HashMap<String, Snapshot>(snapshots);
+		for (String name : names) {
+			Instance instance = instances.get(name);
+			if (instance == null) {
+				next.remove(name);
+				continue;
+			}
+			Snapshot snapshot = new Snapshot();
+			snapshot.fundable = fundable.get(name);
+			for (String p : instance.getProjectNames()) {
+				Project project = instance.getProject(p);
+				snapshot.needed.put(p, project.neededFunds());
+				StringBuilder allocation = new StringBuilder();
+				for (Map.Entry<Donation, Integer> a : project.getAllocations()
+						.entrySet()) {
+					allocation.append(instance.nameOf(a.getKey())).append('=')
+							.append(a.getValue()).append(' ');
+				}
+				snapshot.allocations.put(p, allocation.toString().trim());
+			}
+			for (String d : instance.getDonationNames()) {
+				snapshot.unspent.put(d, instance.getDonation(d).getUnspent());
+			}
+			next.put(name, snapshot);
+		}
+		snapshots = Collections.unmodifiableMap(next);
+	}
+
+	/**
+	 * replaces the snapshots read by queries with ones in which the named
+	 * instance has the project or donation just declared in it, copying the
+	 * rest of its previous snapshot rather than building it afresh
+	 */
+	private void publishDeclared(String name, String kind, String declared) {
+		Instance instance = instances.get(name);
+		Snapshot snapshot = new Snapshot(snapshots.get(name));
+		if (kind.equals("project")) {
+			snapshot.needed.put(declared, instance.getProject(declared)
+					.neededFunds());
+			snapshot.allocations.put(declared, "");
+		} else {
+			snapshot.unspent.put(declared, instance.getDonation(declared)
+					.getUnspent());
+		}
+		Map<String, Snapshot> next = new HashMap<String, Snapshot>(snapshots);
+		next.put(name, snapshot);
+		snapshots = Collections.unmodifiableMap(next);
+	}
+
+	/**
+	 * returns the given strings separated by spaces
+	 */
+	private static String join(Collection<String> strings) {
+		StringBuilder sb = new StringBuilder();
+		for (String s : strings) {
+			sb.append(s).append(' ');
+		}
+		return sb.toString().trim();
+	}
+
+	/**
+	 * @postcondition: stops the writer thread once any queued requests have
+	 *                 been carried out.
+	 */
+	public void shutdown() {
+		writer.shutdown();
+	}
+
+	/**
+	 * @precondition: socket != null
+	 * @postcondition: answers requests from the socket, one line at a time,
+	 *                 until the client closes it.
+	 */
+	public void serve(Socket socket) {
+		try {
+			BufferedReader in = new BufferedReader(new InputStreamReader(
+					socket.getInputStream(), "UTF-8"));
+			Writer out = new BufferedWriter(new OutputStreamWriter(
+					socket.getOutputStream(), "UTF-8"));
+			String request;
+			while ((request = in.readLine()) != null) {
+				if (request.trim().isEmpty()) {
+					continue;
+				}
+				out.write(handle(request));
+				out.write('\n');
+				out.flush();
+			}
+		} catch (IOException e) {
+			// the client went away
+		} finally {
+			try {
+				socket.close();
+			} catch (IOException e) {
+				// already closed
+			}
+		}
+	}
+
+	public static void main(String[] args) throws IOException {
+		int port = DEFAULT_PORT;
+		Allocator allocator = Allocator.PUSH_RELABEL;
+		List<String> files = new ArrayList<String>();
+		for (int i = 0; i < args.length; i++) {
+			if (args[i].equals("-port") && i + 1 < args.length) {
+				port = Integer.parseInt(args[++i]);
+			} else if (args[i].equals("-allocator") && i + 1 < args.length) {
+				allocator = Allocator.forName(args[++i]);
+			} else {
+				files.add(args[i]);
+			}
+		}
+
+		final QueryServer server = new QueryServer(allocator);
+		for (String file : files) {
+			System.err.println(server.handle("load " + file));
+		}
+		// one (pooled) thread per connection
+		ExecutorService connections = Executors.newCachedThreadPool();
+		ServerSocket listener = new ServerSocket(port, 1024,
+				InetAddress.getLoopbackAddress());
+		System.err.println("listening on " + listener.getLocalSocketAddress());
+		try {
+			while (true) {
+				final Socket socket = listener.accept();
+				connections.execute(new Runnable() {
+					@Override
+					public void run() {
+						server.serve(socket);
+					}
+				});
+			}
+		} finally {
+			listener.close();
+			connections.shutdown();
+			server.shutdown();
+		}
+	}
+}
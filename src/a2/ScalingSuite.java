@@ -0,0 +1,412 @@
+package a2;
+
+import java.io.*;
+import java.lang.management.*;
+import java.util.*;
+
+import a2.InstanceGenerator.Topology;
+
+/**
+ * A regression suite that runs allocators on generated instances of doubling
+ * size and fits the growth of their solve time and heap churn (bytes
+ * allocated while solving) to a power law
+ *
+ * 	value = constant * size ^ exponent
+ *
+ * so that a change that makes an allocator scale worse is caught before it
+ * meets a large instance.
+ *
+ * Usage: java a2.ScalingSuite [-allocator NAME]... [-topology NAME]...
+ * [-min N] [-max N] [-repeats N] [-seed S] [-slack X] [-factor X]
+ * [-threads N] [-baseline FILE] [-record FILE]
+ *
+ * By default ITERATIVE, PUSH_RELABEL and COLUMNAR are run on every topology,
+ * from 16 projects up to 1024 (64 for ITERATIVE, which is much slower). One
+ * line (in the format of Curve.toString) is written to standard output for
+ * each allocator and topology. With -record the lines are also written to
+ * FILE; with -baseline each curve is compared with the one in FILE for the
+ * same allocator and topology, and the suite exits with status 1 if any
+ * exponent grew by more than the slack (default 0.3) or any fitted value at
+ * the largest size by more than the factor (default 2), or if an exact
+ * allocator failed to fund a generated instance.
+ *
+ * PUSH_RELABEL only uses threads on instances with 4096 or more projects
+ * and donations between them, which the default sizes stay below. With -threads it solves every
+ * instance with N threads instead, so that its parallel path is timed; a
+ * baseline to compare against should then be recorded with the same N. Only
+ * the heap churn of the calling thread is counted, not that of the workers.
+ */
+
+public class ScalingSuite {
+
+	// default smallest and largest number of projects
+	private static final int DEFAULT_MIN = 16;
+	private static final int DEFAULT_MAX = 1024;
+	// default largest number of projects for the iterative allocator, which
+	// is much slower than the flow-based ones
+	private static final int DEFAULT_ITERATIVE_MAX = 64;
+	// allocators that must fund every generated instance (the iterative one
+	// can miss an allocation, so its answers are only timed)
+	private static final Set<Allocator> EXACT = EnumSet.of(Allocator.NAIVE,
+			Allocator.NAIVE_EXACT, Allocator.PUSH_RELABEL, Allocator.COLUMNAR);
+	// default allowed growth of an exponent and of a fitted value
+	private static final double DEFAULT_SLACK = 0.3;
+	private static final double DEFAULT_FACTOR = 2;
+
+	/**
+	 * A fitted curve for one allocator on one topology.
+	 */
+	public static class Curve {
+		public final Allocator allocator;
+		public final Topology topology;
+		// fitted solve time in nanoseconds
+		public final double timeExponent;
+		public final double timeConstant;
+		// fitted bytes allocated while solving (0 if it can't be measured)
+		public final double churnExponent;
+		public final double churnConstant;
+
+		/**
+		 * @precondition: allocator != null && topology != null
+		 * @postcondition: creates a curve with the given fits.
+		 */
+		public Curve(Allocator allocator, Topology topology,
+				double timeExponent, double timeConstant,
+				double churnExponent, double churnConstant) {
+			assert allocator != null && topology != null;
+			this.allocator = allocator;
+			this.topology = topology;
+			this.timeExponent = timeExponent;
+			this.timeConstant = timeConstant;
+			this.churnExponent = churnExponent;
+			this.churnConstant = churnConstant;
+		}
+
+		/**
+		 * @postcondition: returns the curve as one tab-separated line:
+		 *
+		 *                 ALLOCATOR TOPOLOGY TIME-EXPONENT TIME-CONSTANT
+		 *                 CHURN-EXPONENT CHURN-CONSTANT
+		 */
+		@Override
+		public String toString() {
+			return String.format(Locale.ROOT, "%s\t%s\t%.3f\t%.6g\t%.3f\t%.6g",
+					allocator, topology, timeExponent, timeConstant,
+					churnExponent, churnConstant);
+		}
+
+		/**
+		 * @precondition: line != null
+		 * @postcondition: returns the curve written on the line by toString.
+		 *                 Throws an IOException if the line is malformed.
+		 */
+		public static Curve parse(String line) throws IOException {
+			String[] words = line.trim().split("\\s+");
+			try {
+				if (words.length != 6) {
+					throw new IllegalArgumentException();
+				}
+				return new Curve(Allocator.forName(words[0]),
+						Topology.valueOf(words[1]),
+						Double.parseDouble(words[2]),
+						Double.parseDouble(words[3]),
+						Double.parseDouble(words[4]),
+						Double.parseDouble(words[5]));
+			} catch (IllegalArgumentException e) {
+				throw new IOException("malformed curve: " + line, e);
+			}
+		}
+	}
+
+	/**
+	 * @precondition: allocator != null && topology != null && 0 < min <= max
+	 *                && repeats > 0
+	 * @postcondition: solves generated instances of the given topology with
+	 *                 min, 2*min, 4*min, ... (up to max) projects using the
+	 *                 allocator and returns the curves fitted to the smallest
+	 *                 time and churn of the given number of runs at each
+	 *                 size. The instances of each size are generated from
+	 *                 seed + size, so the same arguments measure the same
+	 *                 instances. Every generated instance can be funded, so
+	 *                 throws an IllegalStateException if an exact allocator
+	 *                 (NAIVE, NAIVE_EXACT, PUSH_RELABEL or COLUMNAR) fails to
+	 *                 fund one.
+	 */
+	public static Curve measure(Allocator allocator, Topology topology,
+			int min, int max, int repeats, long seed) {
+		return measure(allocator, topology, min, max, repeats, seed, 0);
+	}
+
+	/**
+	 * @precondition: as for measure above, and threads >= 0
+	 * @postcondition: as for measure above, except that if threads > 0 a
+	 *                 PUSH_RELABEL allocator solves every instance with that
+	 *                 many threads, however small it is.
+	 */
+	public static Curve measure(Allocator allocator, Topology topology,
+			int min, int max, int repeats, long seed, int threads) {
+		assert allocator != null && topology != null && 0 < min
+				&& min <= max && repeats > 0 && threads >= 0;
+		// run every size once first so that none of them is timed cold
+		for (long size = min; size <= max; size = size * 2) {
+			run(allocator, InstanceGenerator.generate(topology, (int) size,
+					seed + size), threads);
+		}
+		List<Double> sizes = new ArrayList<Double>();
+		List<Double> times = new ArrayList<Double>();
+		List<Double> churns = new ArrayList<Double>();
+		for (long size = min; size <= max; size = size * 2) {
+			long bestTime = Long.MAX_VALUE;
+			long bestChurn = Long.MAX_VALUE;
+			for (int r = 0; r < repeats; r++) {
+				long[] cost = run(allocator, InstanceGenerator.generate(
+						topology, (int) size, seed + size), threads);
+				bestTime = Math.min(bestTime, cost[0]);
+				bestChurn = Math.min(bestChurn, cost[1]);
+			}
+			sizes.add((double) size);
+			times.add((double) bestTime);
+			churns.add((double) bestChurn);
+		}
+		double[] time = fit(sizes, times);
+		double[] churn = fit(sizes, churns);
+		return new Curve(allocator, topology, time[0], time[1], churn[0],
+				churn[1]);
+	}
+
+	/**
+	 * returns the nanoseconds taken and bytes allocated by the calling thread
+	 * (or -1 if that can't be measured) while the allocator solves instance,
+	 * with the given number of threads if it is PUSH_RELABEL and threads > 0,
+	 * checking that an exact allocator funds it
+	 */
+	private static long[] run(Allocator allocator, Instance instance,
+			int threads) {
+		long bytes = allocatedBytes();
+		long start = System.nanoTime();
+		boolean allocated = threads > 0
+				&& allocator == Allocator.PUSH_RELABEL ? PushRelabelAllocator
+				.canAllocate(instance.getDonations(), instance.getProjects(),
+						threads) : instance.solve(allocator);
+		long nanos = System.nanoTime() - start;
+		if (!allocated && EXACT.contains(allocator)) {
+			throw new IllegalStateException(allocator + " could not fund "
+					+ instance.getName() + ", which can be funded");
+		}
+		long churn = bytes < 0 ? -1 : allocatedBytes() - bytes;
+		return new long[] { nanos, churn };
+	}
+
+	/**
+	 * returns the number of bytes the calling thread has allocated so far,
+	 * or -1 if the JVM doesn't say. (Bytes allocated by other threads, such
+	 * as the workers of a parallel allocator, aren't counted.)
+	 */
+	private static long allocatedBytes() {
+		ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		if (!(threads instanceof com.sun.management.ThreadMXBean)) {
+			return -1;
+		}
+		return ((com.sun.management.ThreadMXBean) threads)
+				.getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+
+	/**
+	 * @precondition: sizes and values have the same length and sizes has at
+	 *                least one element, all of them positive
+	 * @postcondition: returns {exponent, constant} of the power law
+	 *                 constant * size ^ exponent fitted to the values by least
+	 *                 squares on a log-log scale, or {0, 0} if the values
+	 *                 can't be measured (are negative). Values below 1 are
+	 *                 counted as 1, and with a single size the exponent is 0.
+	 */
+	public static double[] fit(List<Double> sizes, List<Double> values) {
+		assert sizes.size() == values.size() && !sizes.isEmpty();
+		int n = sizes.size();
+		double sumX = 0;
+		double sumY = 0;
+		double sumXX = 0;
+		double sumXY = 0;
+		for (int i = 0; i < n; i++) {
+			if (values.get(i) < 0) {
+				return new double[] { 0, 0 };
+			}
+			double x = Math.log(sizes.get(i));
+			double y = Math.log(Math.max(values.get(i), 1));
+			sumX = sumX + x;
+			sumY = sumY + y;
+			sumXX = sumXX + x * x;
+			sumXY = sumXY + x * y;
+		}
+		double spread = n * sumXX - sumX * sumX;
+		double exponent = spread == 0 ? 0 : (n * sumXY - sumX * sumY)
+				/ spread;
+		double constant = Math.exp((sumY - exponent * sumX) / n);
+		return new double[] { exponent, constant };
+	}
+
+	/**
+	 * @precondition: current != null && baseline != null && size > 0 &&
+	 *                slack >= 0 && factor >= 1
+	 * @postcondition: returns a description of each way in which current is
+	 *                 worse than baseline: an exponent more than slack
+	 *                 greater, or a value at the given size more than factor
+	 *                 times greater (an empty list if there are none). Values
+	 *                 are compared at a size rather than by their constants
+	 *                 alone because a small change in a fitted exponent moves
+	 *                 the constant a long way.
+	 */
+	public static List<String> regressions(Curve current, Curve baseline,
+			int size, double slack, double factor) {
+		assert current != null && baseline != null && size > 0
+				&& slack >= 0 && factor >= 1;
+		List<String> regressions = new ArrayList<String>();
+		String curve = current.allocator + " " + current.topology;
+		compare(regressions, curve + ": time", current.timeExponent,
+				current.timeConstant, baseline.timeExponent,
+				baseline.timeConstant, size, slack, factor);
+		compare(regressions, curve + ": churn", current.churnExponent,
+				current.churnConstant, baseline.churnExponent,
+				baseline.churnConstant, size, slack, factor);
+		return regressions;
+	}
+
+	/**
+	 * adds to regressions a description of each way in which the fit
+	 * (exponent, constant) is worse than the baseline fit
+	 */
+	private static void compare(List<String> regressions, String what,
+			double exponent, double constant, double baseExponent,
+			double baseConstant, int size, double slack, double factor) {
+		if (exponent > baseExponent + slack) {
+			regressions.add(String.format(Locale.ROOT,
+					"%s exponent %.3f, was %.3f", what, exponent,
+					baseExponent));
+		}
+		double value = constant * Math.pow(size, exponent);
+		double baseValue = baseConstant * Math.pow(size, baseExponent);
+		if (value > baseValue * factor) {
+			regressions.add(String.format(Locale.ROOT,
+					"%s at size %d %.6g, was %.6g", what, size, value,
+					baseValue));
+		}
+	}
+
+	/**
+	 * reads the curves in file, by allocator and topology
+	 */
+	private static Map<String, Curve> readCurves(String file)
+			throws IOException {
+		Map<String, Curve> curves = new HashMap<String, Curve>();
+		BufferedReader in = new BufferedReader(new FileReader(file));
+		try {
+			String line;
+			while ((line = in.readLine()) != null) {
+				if (!line.trim().isEmpty() && !line.startsWith("#")) {
+					Curve curve = Curve.parse(line);
+					curves.put(curve.allocator + " " + curve.topology, curve);
+				}
+			}
+		} finally {
+			in.close();
+		}
+		return curves;
+	}
+
+	public static void main(String[] args) throws IOException {
+		List<Allocator> allocators = new ArrayList<Allocator>();
+		List<Topology> topologies = new ArrayList<Topology>();
+		int min = DEFAULT_MIN;
+		// null for the default maximum
+		Integer max = null;
+		int repeats = 3;
+		long seed = 0;
+		// 0 to let PUSH_RELABEL choose its number of threads
+		int threads = 0;
+		double slack = DEFAULT_SLACK;
+		double factor = DEFAULT_FACTOR;
+		String baseline = null;
+		String record = null;
+		for (int i = 0; i < args.length; i++) {
+			if (args[i].equals("-allocator") && i + 1 < args.length) {
+				allocators.add(Allocator.forName(args[++i]));
+			} else if (args[i].equals("-topology") && i + 1 < args.length) {
+				topologies.add(Topology.valueOf(args[++i].toUpperCase(
+						Locale.ROOT)));
+			} else if (args[i].equals("-min") && i + 1 < args.length) {
+				min = Integer.parseInt(args[++i]);
+			} else if (args[i].equals("-max") && i + 1 < args.length) {
+				max = Integer.parseInt(args[++i]);
+			} else if (args[i].equals("-repeats") && i + 1 < args.length) {
+				repeats = Integer.parseInt(args[++i]);
+			} else if (args[i].equals("-seed") && i + 1 < args.length) {
+				seed = Long.parseLong(args[++i]);
+			} else if (args[i].equals("-threads") && i + 1 < args.length) {
+				threads = Integer.parseInt(args[++i]);
+			} else if (args[i].equals("-slack") && i + 1 < args.length) {
+				slack = Double.parseDouble(args[++i]);
+			} else if (args[i].equals("-factor") && i + 1 < args.length) {
+				factor = Double.parseDouble(args[++i]);
+			} else if (args[i].equals("-baseline") && i + 1 < args.length) {
+				baseline = args[++i];
+			} else if (args[i].equals("-record") && i + 1 < args.length) {
+				record = args[++i];
+			} else {
+				System.err.println("unknown argument: " + args[i]);
+				System.exit(2);
+			}
+		}
+		if (allocators.isEmpty()) {
+			// the naive allocator is exponential, so it is only run if asked
+			allocators.add(Allocator.ITERATIVE);
+			allocators.add(Allocator.PUSH_RELABEL);
+			allocators.add(Allocator.COLUMNAR);
+		}
+		if (topologies.isEmpty()) {
+			topologies.addAll(Arrays.asList(Topology.values()));
+		}
+
+		Map<String, Curve> expected = baseline == null ? null
+				: readCurves(baseline);
+		PrintWriter recorded = record == null ? null : new PrintWriter(
+				new FileWriter(record));
+		List<String> regressions = new ArrayList<String>();
+		try {
+			for (Allocator allocator : allocators) {
+				int largest = max != null ? max
+						: allocator == Allocator.ITERATIVE ? DEFAULT_ITERATIVE_MAX
+								: DEFAULT_MAX;
+				for (Topology topology : topologies) {
+					Curve curve;
+					try {
+						curve = measure(allocator, topology, min, largest,
+								repeats, seed, threads);
+					} catch (IllegalStateException e) {
+						regressions.add(e.getMessage());
+						continue;
+					}
+					System.out.println(curve);
+					if (recorded != null) {
+						recorded.println(curve);
+					}
+					Curve old = expected == null ? null : expected
+							.get(allocator + " " + topology);
+					if (old != null) {
+						regressions.addAll(regressions(curve, old, largest,
+								slack, factor));
+					}
+				}
+			}
+		} finally {
+			if (recorded != null) {
+				recorded.close();
+			}
+		}
+		for (String regression : regressions) {
+			System.err.println("regression: " + regression);
+		}
+		if (!regressions.isEmpty()) {
+			System.exit(1);
+		}
+	}
+}
@@ -0,0 +1,75 @@
+package a2.test;
+
+import org.junit.*;
+import java.io.*;
+import a2.*;
+
+/**
+ * Some tests for BatchRunner: results are written as instances finish,
+ * malformed instances are skipped, and latencies are summarised.
+ */
+public class BatchRunnerTest {
+
+	@Test
+	public void submitTest() throws Exception {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		BatchRunner runner = new BatchRunner(2, Allocator.PUSH_RELABEL,
+				new PrintStream(bytes, true));
+		runner.submitAll(new BufferedReader(new StringReader(
+				"instance a\n" + "project P0 10\n" + "donation D0 10 P0\n"
+						+ "end\n" + "instance b\n" + "project P0 10\n"
+						+ "donation D0 5 P0\n" + "end\n")), "in");
+		runner.finish();
+
+		String[] lines = bytes.toString().trim().split("\n");
+		Assert.assertEquals(2, lines.length);
+		for (String line : lines) {
+			String[] fields = line.split("\t");
+			Assert.assertEquals(4, fields.length);
+			Assert.assertEquals("PUSH_RELABEL", fields[1]);
+			Assert.assertEquals(fields[0].equals("a") ? "true" : "false",
+					fields[2]);
+		}
+		Assert.assertEquals(2, runner.solved());
+		Assert.assertEquals(0, runner.failures());
+		Assert.assertTrue(runner.percentile(50) > 0);
+		Assert.assertTrue(runner.percentile(50) <= runner.percentile(100));
+	}
+
+	@Test
+	public void streamTest() throws Exception {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		BatchRunner runner = new BatchRunner(1, Allocator.PUSH_RELABEL,
+				new PrintStream(bytes, true));
+		Instance instance = new Instance("a");
+		instance.declare("project P0 10");
+		instance.declare("donation D0 10 P0");
+		runner.submit(instance);
+		// the result is written without waiting for another submit or finish
+		long deadline = System.currentTimeMillis() + 10000;
+		while (bytes.size() == 0 && System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+		}
+		Assert.assertTrue(bytes.toString().startsWith("a\t"));
+		runner.finish();
+	}
+
+	@Test
+	public void malformedTest() throws Exception {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		BatchRunner runner = new BatchRunner(2, Allocator.PUSH_RELABEL,
+				new PrintStream(bytes, true));
+		runner.submitAll(new BufferedReader(new StringReader(
+				"instance a\n" + "project P0 10\n" + "donation D0 10 P0\n"
+						+ "end\n" + "instance bad\n" + "project P0 ten\n"
+						+ "donation D0 10 P0\n" + "end\n" + "instance d\n"
+						+ "project P0 10\n" + "donation D0 10 P0\n"
+						+ "end\n")), "in");
+		runner.finish();
+
+		// the instance after the malformed one is still solved
+		Assert.assertEquals(2, runner.solved());
+		Assert.assertEquals(1, runner.failures());
+		Assert.assertTrue(bytes.toString().contains("d\tPUSH_RELABEL\ttrue"));
+	}
+}
@@ -0,0 +1,173 @@
+package a2.test;
+
+import org.junit.*;
+import java.util.*;
+import a2.*;
+
+/**
+ * Some tests for ColumnarInstance, solving instances directly in the store
+ * and through its canAllocate method.
+ */
+public class ColumnarInstanceTest {
+
+	@Test
+	public void solveTest() {
+		ColumnarInstance store = new ColumnarInstance();
+		int p0 = store.addProject(10);
+		int p1 = store.addProject(10);
+		int d0 = store.addDonation(15, p0, p1);
+		int d1 = store.addDonation(5, p1);
+		Assert.assertTrue(store.solve());
+		Assert.assertEquals(0, store.needed(p0));
+		Assert.assertEquals(0, store.needed(p1));
+		Assert.assertEquals(0, store.unspent(d0));
+		Assert.assertEquals(0, store.unspent(d1));
+
+		// only the entries asked for are made into objects
+		Project project = store.project(p1);
+		Assert.assertTrue(project.fullyFunded());
+		Assert.assertEquals(2, project.getAllocations().size());
+		Donation donation = store.donation(d0);
+		Assert.assertEquals(15, donation.getTotal());
+		Assert.assertEquals(0, donation.getUnspent());
+		Assert.assertEquals(2, donation.getProjects().size());
+
+		// a later project that can't be funded removes the allocations
+		store.addProject(1);
+		Assert.assertFalse(store.solve());
+		Assert.assertEquals(10, store.needed(p0));
+		Assert.assertEquals(15, store.unspent(d0));
+	}
+
+	@Test
+	public void presizedTest() {
+		// the columns start with room for two projects, two donations and
+		// three edges, and have to grow past that
+		ColumnarInstance store = new ColumnarInstance(2, 2, 3);
+		int p0 = store.addProject(10);
+		int p1 = store.addProject(10);
+		int d0 = store.addDonation(15, p0, p1);
+		int d1 = store.addDonation(5, p1);
+		Assert.assertTrue(store.solve());
+
+		// solving again reuses the working columns, which also have to grow
+		int p2 = store.addProject(20);
+		int d2 = store.addDonation(10, p0, p2);
+		int d3 = store.addDonation(10, p1, p2);
+		store.deallocateAll();
+		Assert.assertTrue(store.solve());
+		for (int p : new int[] { p0, p1, p2 }) {
+			Assert.assertEquals(0, store.needed(p));
+		}
+		for (int d : new int[] { d0, d1, d2, d3 }) {
+			Assert.assertEquals(0, store.unspent(d));
+		}
+		Assert.assertEquals(2, store.project(p2).getAllocations().size());
+	}
+
+	@Test
+	public void randomTestAgreesWithNaive() {
+		Random random = new Random(0);
+		for (int i = 0; i < 200; i++) {
+			long seed = random.nextLong();
+			List<Donation> naiveDonations = new ArrayList<>();
+			Set<Project> naiveProjects = new HashSet<>();
+			randomInstance(new Random(seed), naiveDonations, naiveProjects);
+			List<Donation> actualDonations = new ArrayList<>();
+			Set<Project> actualProjects = new HashSet<>();
+			randomInstance(new Random(seed), actualDonations, actualProjects);
+
+			boolean expected = NaiveAllocator.canAllocate(naiveDonations,
+					naiveProjects);
+			Assert.assertEquals(expected, Allocator.COLUMNAR.canAllocate(
+					actualDonations, actualProjects));
+			if (expected) {
+				checkCompleteAllocation(actualDonations, actualProjects);
+			} else {
+				checkEmptyAllocation(actualDonations, actualProjects);
+			}
+		}
+	}
+
+	// helper methods
+
+	/**
+	 * Helper method to fill donations and projects with a small random
+	 * instance drawn from the given generator.
+	 **/
+	private void randomInstance(Random random, List<Donation> donations,
+			Set<Project> projects) {
+		List<Project> list = new ArrayList<Project>();
+		for (int i = 0; i < 1 + random.nextInt(4); i++) {
+			list.add(new Project("P" + i, 1 + random.nextInt(6)));
+		}
+		for (int i = 0; i < 1 + random.nextInt(5); i++) {
+			Set<Project> eligible = new HashSet<Project>();
+			for (Project p : list) {
+				if (random.nextInt(3) == 0) {
+					eligible.add(p);
+				}
+			}
+			donations.add(new Donation("D" + i, 1 + random.nextInt(6),
+					eligible));
+		}
+		projects.addAll(list);
+	}
+
+	/**
+	 * Helper method to check that each project has been completely allocated by
+	 * the given donations, and that the total spent on each donation is equal
+	 * to that spent on the given projects.
+	 **/
+	private void checkCompleteAllocation(List<Donation> donations,
+			Set<Project> projects) {
+
+		// the amount spent from each donation by all of the combined projects
+		Map<Donation, Integer> totalSpent = new HashMap<>();
+
+		// check that each project has been completely (and properly) allocated
+		// and calculate totalSpent
+		for (Project p : projects) {
+			Assert.assertTrue(p.fullyFunded());
+			for (Map.Entry<Donation, Integer> allocation : p.getAllocations()
+					.entrySet()) {
+				Donation d = allocation.getKey();
+				int amount = allocation.getValue();
+				Assert.assertTrue(amount > 0);
+				Assert.assertTrue(d.canBeUsedFor(p));
+				Assert.assertTrue(donations.contains(d));
+				if (totalSpent.containsKey(d)) {
+					totalSpent.put(d, totalSpent.get(d) + amount);
+				} else {
+					totalSpent.put(d, amount);
+				}
+			}
+		}
+
+		// check that the remaining funds in each donation are correct, assuming
+		// that no funds were spent from each donation to begin with.
+		for (Donation d : donations) {
+			if (totalSpent.containsKey(d)) {
+				Assert.assertTrue(d.getUnspent() >= 0);
+				Assert.assertEquals(d.getUnspent(),
+						d.getTotal() - totalSpent.get(d));
+			} else {
+				Assert.assertEquals(d.getUnspent(), d.getTotal());
+			}
+		}
+	}
+
+	/**
+	 * Helper method to check that no allocations have been made for any project
+	 * in projects and that all donations have not been spent at all.
+	 **/
+	private void checkEmptyAllocation(List<Donation> donations,
+			Set<Project> projects) {
+		for (Project p : projects) {
+			Assert.assertEquals(p.getCost(), p.neededFunds());
+		}
+		for (Donation d : donations) {
+			Assert.assertEquals(d.getUnspent(), d.getTotal());
+		}
+	}
+}
@@ -0,0 +1,73 @@
+package a2.test;
+
+import org.junit.*;
+import java.util.*;
+import a2.*;
+import a2.InstanceGenerator.Topology;
+
+/**
+ * Some tests for the InstanceGenerator.generate method.
+ */
+public class InstanceGeneratorTest {
+
+	@Test
+	public void fundableTest() {
+		for (Topology topology : Topology.values()) {
+			Instance instance = InstanceGenerator.generate(topology, 37, 1);
+			Assert.assertEquals(37, instance.getProjects().size());
+			Assert.assertEquals(74, instance.getDonations().size());
+			// every donation has to be spent to fund the projects
+			long total = 0;
+			for (Donation d : instance.getDonations()) {
+				total = total + d.getTotal();
+			}
+			long cost = 0;
+			for (Project p : instance.getProjects()) {
+				cost = cost + p.getCost();
+			}
+			Assert.assertEquals(total, cost);
+			Assert.assertTrue(instance.solve(Allocator.PUSH_RELABEL));
+		}
+	}
+
+	@Test
+	public void reproducibleTest() {
+		for (Topology topology : Topology.values()) {
+			Instance first = InstanceGenerator.generate(topology, 20, 7);
+			Instance second = InstanceGenerator.generate(topology, 20, 7);
+			for (String name : first.getProjectNames()) {
+				Assert.assertEquals(first.getProject(name).getCost(), second
+						.getProject(name).getCost());
+			}
+			for (String name : first.getDonationNames()) {
+				Donation d = first.getDonation(name);
+				Donation e = second.getDonation(name);
+				Assert.assertEquals(d.getTotal(), e.getTotal());
+				Set<String> eligible = new HashSet<String>();
+				for (Project p : d.getProjects()) {
+					eligible.add(first.nameOf(p));
+				}
+				Set<String> otherEligible = new HashSet<String>();
+				for (Project p : e.getProjects()) {
+					otherEligible.add(second.nameOf(p));
+				}
+				Assert.assertEquals(eligible, otherEligible);
+			}
+		}
+	}
+
+	@Test
+	public void componentsTest() {
+		Instance instance = InstanceGenerator.generate(Topology.COMPONENTS,
+				10, 3);
+		int size = InstanceGenerator.COMPONENT_SIZE;
+		for (Donation d : instance.getDonations()) {
+			Set<Integer> groups = new HashSet<Integer>();
+			for (Project p : d.getProjects()) {
+				groups.add(Integer.parseInt(instance.nameOf(p).substring(1))
+						/ size);
+			}
+			Assert.assertEquals(1, groups.size());
+		}
+	}
+}
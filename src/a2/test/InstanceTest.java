@@ -0,0 +1,60 @@
+package a2.test;
+
+import org.junit.*;
+import java.io.*;
+import java.util.*;
+import a2.*;
+
+/**
+ * Some tests for reading instances with the Instance.read method.
+ */
+public class InstanceTest {
+
+	@Test
+	public void readTest() throws IOException {
+		BufferedReader in = new BufferedReader(new StringReader(
+				"# a comment\n" + "instance first\n" + "allocator naive\n"
+						+ "project P0 10\n" + "project P1 10\n"
+						+ "donation D0 10 P0 P1\n" + "donation D1 20 P0\n"
+						+ "end\n" + "\n" + "project Q0 5\n"
+						+ "donation E0 5 Q0\n"));
+
+		Instance first = Instance.read(in, "default");
+		Assert.assertEquals("first", first.getName());
+		Assert.assertEquals(Allocator.NAIVE, first.getAllocator());
+		Assert.assertEquals(2, first.getProjects().size());
+		Assert.assertEquals(2, first.getDonations().size());
+		Project p0 = first.getProject("P0");
+		Project p1 = first.getProject("P1");
+		Assert.assertEquals(10, p0.getCost());
+		Assert.assertEquals(new HashSet<>(Arrays.asList(p0, p1)), first
+				.getDonation("D0").getProjects());
+		Assert.assertEquals(20, first.getDonation("D1").getTotal());
+		Assert.assertTrue(first.solve(Allocator.ITERATIVE));
+		Assert.assertTrue(p0.fullyFunded() && p1.fullyFunded());
+
+		Instance second = Instance.read(in, "default");
+		Assert.assertEquals("default", second.getName());
+		Assert.assertNull(second.getAllocator());
+		Assert.assertEquals(1, second.getProjects().size());
+		Assert.assertTrue(second.solve(Allocator.PUSH_RELABEL));
+
+		Assert.assertNull(Instance.read(in, "default"));
+	}
+
+	@Test
+	public void readTestMalformed() {
+		String[] inputs = { "project P0\n", "project P0 0\n",
+				"project P0 10\ndonation D0 10 P1\n",
+				"project P0 10\nproject P0 20\n", "allocator fastest\n" };
+		for (String input : inputs) {
+			try {
+				Instance.read(new BufferedReader(new StringReader(input)),
+						"default");
+				Assert.fail("read should have failed on " + input);
+			} catch (IOException e) {
+				// expected
+			}
+		}
+	}
+}
@@ -63,6 +63,73 @@ public class IterativeAllocatorTest {
 		checkEmptyAllocation(actualDonations, actualProjects);
 	}
 
+	@Test
+	public void chainTestTrue() {
+		List<Project> projects = new ArrayList<Project>();
+		ArrayList<Donation> donations = new ArrayList<Donation>();
+		projects.add(new Project("P0", 100));
+		projects.add(new Project("P1", 100));
+		projects.add(new Project("P2", 100));
+		projects.add(new Project("P3", 100));
+		// each donation is needed by the project after the one it first funds
+		donations.add(new Donation("D0", 100, new HashSet<Project>(Arrays
+				.asList(projects.get(0), projects.get(1)))));
+		donations.add(new Donation("D1", 100, new HashSet<Project>(Arrays
+				.asList(projects.get(1), projects.get(2)))));
+		donations.add(new Donation("D2", 100, new HashSet<Project>(Arrays
+				.asList(projects.get(2), projects.get(3)))));
+		donations.add(new Donation("D3", 100, new HashSet<Project>(Arrays
+				.asList(projects.get(0)))));
+
+		List<Donation> actualDonations = new ArrayList<>(donations);
+		Set<Project> actualProjects = new HashSet<>(projects);
+		Assert.assertTrue(IterativeAllocator.canAllocate(actualDonations,
+				actualProjects));
+		// allocation should be complete and valid
+		checkCompleteAllocation(actualDonations, actualProjects);
+	}
+
+	@Test
+	public void lazyPathsTest() {
+		List<Project> projects = new ArrayList<Project>();
+		ArrayList<Donation> donations = new ArrayList<Donation>();
+		for (int i = 0; i < 4; i++) {
+			projects.add(new Project("P" + i, 100));
+		}
+		for (int i = 0; i < 3; i++) {
+			donations.add(new Donation("D" + i, 100, new HashSet<Project>(
+					Arrays.asList(projects.get(i), projects.get(i + 1)))));
+		}
+		Set<Project> actualProjects = new LinkedHashSet<>(projects);
+		IterativeAllocator.Paths paths = new IterativeAllocator.Paths(
+				donations, actualProjects);
+		// nothing is searched until the paths are iterated over
+		Assert.assertEquals(0, paths.searched());
+		Iterator<List<Project>> it = paths.iterator();
+		Assert.assertEquals(Arrays.asList(projects.get(0)), it.next());
+		Assert.assertEquals(1, paths.searched());
+		// the rest of the paths from P0 come from the same search
+		Assert.assertEquals(Arrays.asList(projects.get(0), projects.get(1)),
+				it.next());
+		Assert.assertEquals(1, paths.searched());
+		int count = 2;
+		while (it.hasNext()) {
+			it.next();
+			count++;
+		}
+		Assert.assertEquals(16, count);
+		Assert.assertEquals(4, paths.searched());
+
+		// paths to projects that are fully funded aren't returned
+		projects.get(1).allocate(donations.get(0), 100);
+		count = 0;
+		for (List<Project> path : paths) {
+			Assert.assertFalse(path.get(path.size() - 1).fullyFunded());
+			count++;
+		}
+		Assert.assertEquals(12, count);
+	}
+
 	// helper methods
 
 	/**
@@ -0,0 +1,117 @@
+package a2.test;
+
+import org.junit.*;
+import java.io.*;
+import java.util.*;
+import a2.*;
+
+/**
+ * Some tests for recording allocations with a Ledger and rebuilding them.
+ */
+public class LedgerTest {
+
+	@Test
+	public void replayTest() throws IOException {
+		File file = File.createTempFile("ledger", ".bin");
+		Instance instance = instance();
+		Project p0 = instance.getProject("P0");
+		Project p1 = instance.getProject("P1");
+		Donation d0 = instance.getDonation("D0");
+		Donation d1 = instance.getDonation("D1");
+
+		Ledger ledger = new Ledger(instance, file, 2);
+		try {
+			ledger.allocate(p0, d0, 60);
+			ledger.allocate(p0, d1, 20);
+			ledger.transfer(50, p1, p0);
+			long transferred = ledger.sequence();
+			ledger.deallocate(p0, d0, 10);
+			// changes made by an allocator are picked up by reconcile
+			p0.deallocateAll();
+			p1.deallocateAll();
+			Assert.assertTrue(PushRelabelAllocator.canAllocate(
+					instance.getDonations(), instance.getProjects()));
+			ledger.reconcile();
+
+			Ledger.State state = ledger.stateAt(2);
+			Assert.assertEquals(2, state.sequence());
+			Assert.assertEquals(40, state.unspent(0));
+			Assert.assertEquals(80, state.unspent(1));
+			Assert.assertEquals(60, state.allocation(0, 0));
+			Assert.assertEquals(20, state.allocation(0, 1));
+
+			state = ledger.stateAt(transferred);
+			Assert.assertEquals(30, state.allocation(0, 0)
+					+ state.allocation(0, 1));
+			Assert.assertEquals(50, state.allocation(1, 0)
+					+ state.allocation(1, 1));
+			Assert.assertEquals(40, state.unspent(0));
+
+			state = ledger.stateAt(transferred + 1);
+			Assert.assertEquals(50, state.unspent(0));
+
+			checkMatches(ledger.stateAt(ledger.sequence()), instance);
+			ledger.commit();
+		} finally {
+			ledger.close();
+		}
+
+		// reopening the ledger rebuilds the allocations
+		Instance reopened = instance();
+		ledger = new Ledger(reopened, file, 2);
+		try {
+			checkMatches(ledger.currentState(), instance);
+			Assert.assertTrue(reopened.getProject("P0").fullyFunded());
+			Assert.assertTrue(reopened.getProject("P1").fullyFunded());
+			Assert.assertEquals(d0.getUnspent(), reopened.getDonation("D0")
+					.getUnspent());
+		} finally {
+			ledger.close();
+			deleteLedger(file);
+		}
+	}
+
+	// helper methods
+
+	/**
+	 * Helper method to build a small instance.
+	 **/
+	private Instance instance() {
+		Instance instance = new Instance("ledger");
+		instance.addProject("P0", 100);
+		instance.addProject("P1", 100);
+		instance.addDonation("D0", 100, Arrays.asList("P0", "P1"));
+		instance.addDonation("D1", 100, Arrays.asList("P0", "P1"));
+		return instance;
+	}
+
+	/**
+	 * Helper method to check that a state records the current allocations of
+	 * an instance.
+	 **/
+	private void checkMatches(Ledger.State state, Instance instance) {
+		List<Project> projects = new ArrayList<>(instance.getProjects());
+		List<Donation> donations = instance.getDonations();
+		for (int d = 0; d < donations.size(); d++) {
+			Assert.assertEquals(donations.get(d).getUnspent(),
+					state.unspent(d));
+			for (int p = 0; p < projects.size(); p++) {
+				Integer amount = projects.get(p).getAllocations()
+						.get(donations.get(d));
+				Assert.assertEquals(amount == null ? 0 : amount,
+						state.allocation(p, d));
+			}
+		}
+	}
+
+	/**
+	 * Helper method to delete a ledger file and its checkpoints.
+	 **/
+	private void deleteLedger(File file) {
+		for (File f : file.getParentFile().listFiles()) {
+			if (f.getName().startsWith(file.getName())) {
+				f.delete();
+			}
+		}
+	}
+}
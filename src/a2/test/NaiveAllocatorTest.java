@@ -63,8 +63,153 @@ public class NaiveAllocatorTest {
 		checkEmptyAllocation(actualDonations, actualProjects);
 	}
 
+	@Test
+	public void exactTestTrue() {
+		List<Project> projects = new ArrayList<Project>();
+		ArrayList<Donation> donations = new ArrayList<Donation>();
+		// a ring of projects, each of which can be funded by two donations
+		for (int i = 0; i < 12; i++) {
+			projects.add(new Project("P" + i, 40));
+		}
+		for (int i = 0; i < 24; i++) {
+			donations.add(new Donation("D" + i, 20, new HashSet<Project>(
+					Arrays.asList(projects.get(i % 12),
+							projects.get((i + 1) % 12)))));
+		}
+
+		List<Donation> actualDonations = new ArrayList<>(donations);
+		Set<Project> actualProjects = new HashSet<>(projects);
+		Assert.assertTrue(NaiveAllocator.canAllocateExact(actualDonations,
+				actualProjects));
+		Assert.assertEquals(donations, actualDonations);
+		Assert.assertEquals(new HashSet<>(projects), actualProjects);
+		checkCompleteAllocation(actualDonations, actualProjects);
+	}
+
+	@Test
+	public void exactTestFalse() {
+		List<Project> projects = new ArrayList<Project>();
+		ArrayList<Donation> donations = new ArrayList<Donation>();
+		// as for exactTestTrue, but with $10 too little in total
+		for (int i = 0; i < 12; i++) {
+			projects.add(new Project("P" + i, 40));
+		}
+		for (int i = 0; i < 24; i++) {
+			donations.add(new Donation("D" + i, i == 0 ? 10 : 20,
+					new HashSet<Project>(Arrays.asList(projects.get(i % 12),
+							projects.get((i + 1) % 12)))));
+		}
+
+		List<Donation> actualDonations = new ArrayList<>(donations);
+		Set<Project> actualProjects = new HashSet<>(projects);
+		Assert.assertFalse(NaiveAllocator.canAllocateExact(actualDonations,
+				actualProjects));
+		Assert.assertEquals(donations, actualDonations);
+		Assert.assertEquals(new HashSet<>(projects), actualProjects);
+		checkEmptyAllocation(actualDonations, actualProjects);
+	}
+
+	@Test
+	public void exactTestBalancedFalse() {
+		List<Project> projects = new ArrayList<Project>();
+		ArrayList<Donation> donations = new ArrayList<Donation>();
+		// as for exactTestTrue, but D0 may also fund an extra project X and
+		// the $10 that X needs is in a donation no project can use, so the
+		// totals balance but the ring can't cover X as well
+		for (int i = 0; i < 12; i++) {
+			projects.add(new Project("P" + i, 40));
+		}
+		projects.add(new Project("X", 10));
+		for (int i = 0; i < 24; i++) {
+			Set<Project> eligible = new HashSet<Project>(Arrays.asList(
+					projects.get(i % 12), projects.get((i + 1) % 12)));
+			if (i == 0) {
+				eligible.add(projects.get(12));
+			}
+			donations.add(new Donation("D" + i, 20, eligible));
+		}
+		donations.add(new Donation("E", 10, new HashSet<Project>()));
+
+		List<Donation> actualDonations = new ArrayList<>(donations);
+		Set<Project> actualProjects = new HashSet<>(projects);
+		Assert.assertFalse(NaiveAllocator.canAllocateExact(actualDonations,
+				actualProjects));
+		Assert.assertEquals(donations, actualDonations);
+		Assert.assertEquals(new HashSet<>(projects), actualProjects);
+		checkEmptyAllocation(actualDonations, actualProjects);
+	}
+
+	@Test
+	public void exactTestConnectedFalse() {
+		List<Project> projects = new ArrayList<Project>();
+		ArrayList<Donation> donations = new ArrayList<Donation>();
+		// the totals balance and every project is connected, but P0 and P1
+		// need $60 between them and only D0 can fund them, so the search has
+		// to try (and remember) every way of spending D0
+		projects.add(new Project("P0", 30));
+		projects.add(new Project("P1", 30));
+		projects.add(new Project("P2", 100));
+		donations.add(new Donation("D0", 40, new HashSet<Project>(Arrays
+				.asList(projects.get(0), projects.get(1), projects.get(2)))));
+		donations.add(new Donation("D1", 120, new HashSet<Project>(Arrays
+				.asList(projects.get(2)))));
+
+		List<Donation> actualDonations = new ArrayList<>(donations);
+		Set<Project> actualProjects = new HashSet<>(projects);
+		Assert.assertFalse(NaiveAllocator.canAllocateExact(actualDonations,
+				actualProjects));
+		checkEmptyAllocation(actualDonations, actualProjects);
+	}
+
+	@Test
+	public void randomTestExactAgreesWithNaive() {
+		Random random = new Random(0);
+		for (int i = 0; i < 200; i++) {
+			long seed = random.nextLong();
+			List<Donation> naiveDonations = new ArrayList<>();
+			Set<Project> naiveProjects = new HashSet<>();
+			randomInstance(new Random(seed), naiveDonations, naiveProjects);
+			List<Donation> actualDonations = new ArrayList<>();
+			Set<Project> actualProjects = new HashSet<>();
+			randomInstance(new Random(seed), actualDonations, actualProjects);
+
+			boolean expected = NaiveAllocator.canAllocate(naiveDonations,
+					naiveProjects);
+			Assert.assertEquals(expected, Allocator.NAIVE_EXACT.canAllocate(
+					actualDonations, actualProjects));
+			if (expected) {
+				checkCompleteAllocation(actualDonations, actualProjects);
+			} else {
+				checkEmptyAllocation(actualDonations, actualProjects);
+			}
+		}
+	}
+
 	// helper methods
 
+	/**
+	 * Helper method to fill donations and projects with a small random
+	 * instance drawn from the given generator.
+	 **/
+	private void randomInstance(Random random, List<Donation> donations,
+			Set<Project> projects) {
+		List<Project> list = new ArrayList<Project>();
+		for (int i = 0; i < 1 + random.nextInt(5); i++) {
+			list.add(new Project("P" + i, 1 + random.nextInt(6)));
+		}
+		for (int i = 0; i < 1 + random.nextInt(7); i++) {
+			Set<Project> eligible = new HashSet<Project>();
+			for (Project p : list) {
+				if (random.nextInt(3) == 0) {
+					eligible.add(p);
+				}
+			}
+			donations.add(new Donation("D" + i, 1 + random.nextInt(6),
+					eligible));
+		}
+		projects.addAll(list);
+	}
+
 	/**
 	 * Helper method to check that each project has been completely allocated by
 	 * the given donations, and that the total spent on each donation is equal
@@ -0,0 +1,243 @@
+package a2.test;
+
+import org.junit.*;
+import java.util.*;
+import a2.*;
+
+/**
+ * Some tests for the PushRelabelAllocator.canAllocate method, including checks
+ * that it agrees with NaiveAllocator on small random instances.
+ */
+public class PushRelabelAllocatorTest {
+
+	@Test
+	public void basicTestTrue() {
+		List<Project> projects = new ArrayList<Project>();
+		ArrayList<Donation> donations = new ArrayList<Donation>();
+		projects.add(new Project("P0", 100));
+		projects.add(new Project("P1", 100));
+		projects.add(new Project("P2", 100));
+		donations.add(new Donation("D0", 100, new HashSet<Project>(Arrays
+				.asList(projects.get(0), projects.get(1)))));
+		donations.add(new Donation("D1", 100, new HashSet<Project>(Arrays
+				.asList(projects.get(1), projects.get(2)))));
+		donations.add(new Donation("D2", 50, new HashSet<Project>(Arrays
+				.asList(projects.get(0)))));
+		donations.add(new Donation("D3", 50, new HashSet<Project>(Arrays
+				.asList(projects.get(2)))));
+
+		List<Donation> actualDonations = new ArrayList<>(donations);
+		Set<Project> actualProjects = new HashSet<>(projects);
+		Assert.assertTrue(PushRelabelAllocator.canAllocate(actualDonations,
+				actualProjects));
+		// no donations should be added or removed from the list of donations
+		Assert.assertEquals(donations, actualDonations);
+		// no projects should be added or removed from the set of projects
+		Assert.assertEquals(new HashSet<>(projects), actualProjects);
+		// allocation should be complete and valid
+		checkCompleteAllocation(actualDonations, actualProjects);
+	}
+
+	@Test
+	public void basicTestFalse() {
+		List<Project> projects = new ArrayList<Project>();
+		ArrayList<Donation> donations = new ArrayList<Donation>();
+		projects.add(new Project("P0", 100));
+		projects.add(new Project("P1", 100));
+		projects.add(new Project("P2", 100));
+		donations.add(new Donation("D0", 100, new HashSet<Project>(Arrays
+				.asList(projects.get(0), projects.get(1), projects.get(2)))));
+		donations.add(new Donation("D1", 200, new HashSet<Project>(Arrays
+				.asList(projects.get(0)))));
+
+		List<Donation> actualDonations = new ArrayList<>(donations);
+		Set<Project> actualProjects = new HashSet<>(projects);
+		Assert.assertFalse(PushRelabelAllocator.canAllocate(actualDonations,
+				actualProjects));
+		// no donations should be added or removed from the list of donations
+		Assert.assertEquals(donations, actualDonations);
+		// no projects should be added or removed from the set of projects
+		Assert.assertEquals(new HashSet<>(projects), actualProjects);
+		// no allocations should have been made
+		checkEmptyAllocation(actualDonations, actualProjects);
+	}
+
+	@Test
+	public void singleThreadTestTrue() {
+		List<Project> projects = new ArrayList<Project>();
+		ArrayList<Donation> donations = new ArrayList<Donation>();
+		projects.add(new Project("P0", 100));
+		projects.add(new Project("P1", 100));
+		donations.add(new Donation("D0", 150, new HashSet<Project>(Arrays
+				.asList(projects.get(0), projects.get(1)))));
+		donations.add(new Donation("D1", 50, new HashSet<Project>(Arrays
+				.asList(projects.get(1)))));
+
+		List<Donation> actualDonations = new ArrayList<>(donations);
+		Set<Project> actualProjects = new HashSet<>(projects);
+		Assert.assertTrue(PushRelabelAllocator.canAllocate(actualDonations,
+				actualProjects, 1));
+		// allocation should be complete and valid
+		checkCompleteAllocation(actualDonations, actualProjects);
+	}
+
+	@Test
+	public void randomTestAgreesWithNaive() {
+		Random random = new Random(0);
+		for (int i = 0; i < 200; i++) {
+			long seed = random.nextLong();
+			List<Donation> naiveDonations = new ArrayList<>();
+			Set<Project> naiveProjects = new HashSet<>();
+			randomInstance(new Random(seed), naiveDonations, naiveProjects);
+			List<Donation> actualDonations = new ArrayList<>();
+			Set<Project> actualProjects = new HashSet<>();
+			randomInstance(new Random(seed), actualDonations, actualProjects);
+
+			boolean expected = NaiveAllocator.canAllocate(naiveDonations,
+					naiveProjects);
+			Assert.assertEquals(expected, PushRelabelAllocator.canAllocate(
+					actualDonations, actualProjects, 1 + i % 4));
+			if (expected) {
+				checkCompleteAllocation(actualDonations, actualProjects);
+			} else {
+				checkEmptyAllocation(actualDonations, actualProjects);
+			}
+		}
+	}
+
+	@Test
+	public void parallelTestAgreesWithColumnar() {
+		Random random = new Random(1);
+		int fundable = 0;
+		for (int i = 0; i < 20; i++) {
+			long seed = random.nextLong();
+			int size = 100 + random.nextInt(1500);
+			List<Donation> expectedDonations = new ArrayList<>();
+			Set<Project> expectedProjects = new HashSet<>();
+			randomLargeInstance(new Random(seed), size, i % 2 == 1,
+					expectedDonations, expectedProjects);
+			List<Donation> actualDonations = new ArrayList<>();
+			Set<Project> actualProjects = new HashSet<>();
+			randomLargeInstance(new Random(seed), size, i % 2 == 1,
+					actualDonations, actualProjects);
+
+			boolean expected = ColumnarInstance.canAllocate(
+					expectedDonations, expectedProjects);
+			Assert.assertEquals(expected, PushRelabelAllocator.canAllocate(
+					actualDonations, actualProjects, 2 + i % 3));
+			fundable = fundable + (expected ? 1 : 0);
+			if (expected) {
+				checkCompleteAllocation(actualDonations, actualProjects);
+			} else {
+				checkEmptyAllocation(actualDonations, actualProjects);
+			}
+		}
+		// both answers should have been checked
+		Assert.assertTrue(fundable > 0 && fundable < 20);
+	}
+
+	// helper methods
+
+	/**
+	 * Helper method to fill donations and projects with a small random
+	 * instance drawn from the given generator.
+	 **/
+	private void randomInstance(Random random, List<Donation> donations,
+			Set<Project> projects) {
+		List<Project> list = new ArrayList<Project>();
+		for (int i = 0; i < 1 + random.nextInt(4); i++) {
+			list.add(new Project("P" + i, 1 + random.nextInt(6)));
+		}
+		for (int i = 0; i < 1 + random.nextInt(5); i++) {
+			Set<Project> eligible = new HashSet<Project>();
+			for (Project p : list) {
+				if (random.nextInt(3) == 0) {
+					eligible.add(p);
+				}
+			}
+			donations.add(new Donation("D" + i, 1 + random.nextInt(6),
+					eligible));
+		}
+		projects.addAll(list);
+	}
+
+	/**
+	 * Helper method to fill donations and projects with a generated instance
+	 * of the given number of projects. The instance can be funded, but if
+	 * moved is true one donation is moved to another project, which keeps the
+	 * totals equal but usually leaves it unfundable.
+	 **/
+	private void randomLargeInstance(Random random, int size, boolean moved,
+			List<Donation> donations, Set<Project> projects) {
+		InstanceGenerator.Topology[] topologies = InstanceGenerator.Topology
+				.values();
+		Instance instance = InstanceGenerator.generate(
+				topologies[random.nextInt(topologies.length)], size,
+				random.nextLong());
+		donations.addAll(instance.getDonations());
+		projects.addAll(instance.getProjects());
+		if (moved) {
+			int i = random.nextInt(donations.size());
+			Project p = instance.getProject("P" + random.nextInt(size));
+			donations.set(i, new Donation("M", donations.get(i).getTotal(),
+					new HashSet<Project>(Arrays.asList(p))));
+		}
+	}
+
+	/**
+	 * Helper method to check that each project has been completely allocated by
+	 * the given donations, and that the total spent on each donation is equal
+	 * to that spent on the given projects.
+	 **/
+	private void checkCompleteAllocation(List<Donation> donations,
+			Set<Project> projects) {
+
+		// the amount spent from each donation by all of the combined projects
+		Map<Donation, Integer> totalSpent = new HashMap<>();
+
+		// check that each project has been completely (and properly) allocated
+		// and calculate totalSpent
+		for (Project p : projects) {
+			Assert.assertTrue(p.fullyFunded());
+			for (Map.Entry<Donation, Integer> allocation : p.getAllocations()
+					.entrySet()) {
+				Donation d = allocation.getKey();
+				int amount = allocation.getValue();
+				Assert.assertTrue(amount > 0);
+				Assert.assertTrue(d.canBeUsedFor(p));
+				Assert.assertTrue(donations.contains(d));
+				if (totalSpent.containsKey(d)) {
+					totalSpent.put(d, totalSpent.get(d) + amount);
+				} else {
+					totalSpent.put(d, amount);
+				}
+			}
+		}
+
+		// check that the remaining funds in each donation are correct, assuming
+		// that no funds were spent from each donation to begin with.
+		for (Donation d : donations) {
+			if (totalSpent.containsKey(d)) {
+				Assert.assertTrue(d.getUnspent() >= 0);
+				Assert.assertEquals(d.getUnspent(),
+						d.getTotal() - totalSpent.get(d));
+			} else {
+				Assert.assertEquals(d.getUnspent(), d.getTotal());
+			}
+		}
+	}
+
+	/**
+	 * Helper method to check that no allocations have been made for any project
+	 * in projects and that all donations have not been spent at all.
+	 **/
+	private void checkEmptyAllocation(List<Donation> donations,
+			Set<Project> projects) {
+		for (Project p : projects) {
+			Assert.assertEquals(p.getCost(), p.neededFunds());
+		}
+		for (Donation d : donations) {
+			Assert.assertEquals(d.getUnspent(), d.getTotal());
+		}
+	}
+}
@@ -0,0 +1,98 @@
+package a2.test;
+
+import org.junit.*;
+import java.io.*;
+import a2.*;
+
+/**
+ * Some tests for the requests handled by QueryServer.
+ */
+public class QueryServerTest {
+
+	@Test
+	public void queryTest() throws IOException {
+		File file = File.createTempFile("instances", ".txt");
+		file.deleteOnExit();
+		Writer out = new FileWriter(file);
+		out.write("instance basic\n" + "project P0 100\n" + "project P1 100\n"
+				+ "donation D0 150 P0 P1\n" + "donation D1 50 P1\n" + "end\n");
+		out.close();
+
+		QueryServer server = new QueryServer(Allocator.PUSH_RELABEL);
+		try {
+			Assert.assertEquals("ok basic",
+					server.handle("load " + file.getPath()));
+			Assert.assertEquals("ok basic", server.handle("instances"));
+			// nothing has been allocated before the instance is solved
+			Assert.assertEquals("ok 100", server.handle("needed basic P0"));
+			Assert.assertEquals("ok", server.handle("allocation basic P0"));
+			Assert.assertEquals("ok true", server.handle("fundable basic"));
+			Assert.assertEquals("ok 0", server.handle("needed basic P0"));
+			Assert.assertEquals("ok 0", server.handle("unspent basic D0"));
+			Assert.assertEquals("ok D0=100",
+					server.handle("allocation basic P0"));
+
+			// a new project makes the instance unfundable
+			Assert.assertEquals("ok", server.handle("project basic P2 10"));
+			Assert.assertEquals("ok false", server.handle("fundable basic"));
+			Assert.assertEquals("ok 150", server.handle("unspent basic D0"));
+			Assert.assertEquals("ok", server.handle("donation basic D2 10 P2"));
+			Assert.assertEquals("ok true", server.handle("solve basic naive"));
+			Assert.assertEquals("ok 0", server.handle("needed basic P2"));
+
+			Assert.assertEquals("ok", server.handle("drop basic"));
+			Assert.assertEquals("ok", server.handle("instances"));
+		} finally {
+			server.shutdown();
+		}
+	}
+
+	@Test
+	public void queryTestDeclare() throws IOException {
+		File file = File.createTempFile("instances", ".txt");
+		file.deleteOnExit();
+		Writer out = new FileWriter(file);
+		out.write("instance basic\n" + "project P0 100\n"
+				+ "donation D0 150 P0\n" + "end\n");
+		out.close();
+
+		QueryServer server = new QueryServer(Allocator.PUSH_RELABEL);
+		try {
+			server.handle("load " + file.getPath());
+			Assert.assertEquals("ok true", server.handle("solve basic"));
+			// declarations keep the allocations of the last solve
+			for (int i = 1; i <= 100; i++) {
+				Assert.assertEquals("ok", server.handle("project basic P" + i
+						+ " " + i));
+				Assert.assertEquals("ok", server.handle("donation basic D" + i
+						+ " " + i + " P" + i));
+			}
+			Assert.assertEquals("ok D0=100",
+					server.handle("allocation basic P0"));
+			Assert.assertEquals("ok 50", server.handle("unspent basic D0"));
+			Assert.assertEquals("ok", server.handle("allocation basic P100"));
+			Assert.assertEquals("ok 100", server.handle("needed basic P100"));
+			Assert.assertEquals("ok 100", server.handle("unspent basic D100"));
+			Assert.assertEquals("ok true", server.handle("fundable basic"));
+			Assert.assertEquals("ok D100=100",
+					server.handle("allocation basic P100"));
+		} finally {
+			server.shutdown();
+		}
+	}
+
+	@Test
+	public void queryTestErrors() {
+		QueryServer server = new QueryServer(Allocator.PUSH_RELABEL);
+		try {
+			Assert.assertTrue(server.handle("needed none P0")
+					.startsWith("error"));
+			Assert.assertTrue(server.handle("solve none").startsWith("error"));
+			Assert.assertTrue(server.handle("load /no/such/file").startsWith(
+					"error"));
+			Assert.assertTrue(server.handle("frobnicate").startsWith("error"));
+		} finally {
+			server.shutdown();
+		}
+	}
+}
@@ -0,0 +1,76 @@
+package a2.test;
+
+import org.junit.*;
+import java.io.*;
+import java.util.*;
+import a2.*;
+import a2.InstanceGenerator.Topology;
+import a2.ScalingSuite.Curve;
+
+/**
+ * Some tests for fitting and comparing curves in ScalingSuite.
+ */
+public class ScalingSuiteTest {
+
+	@Test
+	public void fitTest() {
+		List<Double> sizes = Arrays.asList(16.0, 32.0, 64.0, 128.0);
+		List<Double> values = new ArrayList<Double>();
+		for (double size : sizes) {
+			values.add(5 * size * size);
+		}
+		double[] fit = ScalingSuite.fit(sizes, values);
+		Assert.assertEquals(2, fit[0], 1e-9);
+		Assert.assertEquals(5, fit[1], 1e-6);
+	}
+
+	@Test
+	public void regressionsTest() {
+		Curve baseline = new Curve(Allocator.PUSH_RELABEL, Topology.CHAIN, 1,
+				100, 1, 50);
+		Curve same = new Curve(Allocator.PUSH_RELABEL, Topology.CHAIN, 1.1,
+				80, 1, 60);
+		Assert.assertTrue(ScalingSuite.regressions(same, baseline, 1024, 0.3,
+				2).isEmpty());
+		// quadratic growth is caught even with a smaller constant
+		Curve quadratic = new Curve(Allocator.PUSH_RELABEL, Topology.CHAIN,
+				2, 10, 1, 50);
+		Assert.assertEquals(2, ScalingSuite.regressions(quadratic, baseline,
+				1024, 0.3, 2).size());
+		// as is a constant factor past the threshold
+		Curve slower = new Curve(Allocator.PUSH_RELABEL, Topology.CHAIN, 1,
+				300, 1, 50);
+		Assert.assertEquals(1, ScalingSuite.regressions(slower, baseline,
+				1024, 0.3, 2).size());
+	}
+
+	@Test
+	public void parseTest() throws IOException {
+		Curve curve = new Curve(Allocator.COLUMNAR, Topology.STAR, 1.25,
+				1234.5, 0.75, 99);
+		Curve parsed = Curve.parse(curve.toString());
+		Assert.assertEquals(curve.allocator, parsed.allocator);
+		Assert.assertEquals(curve.topology, parsed.topology);
+		Assert.assertEquals(curve.timeExponent, parsed.timeExponent, 1e-9);
+		Assert.assertEquals(curve.timeConstant, parsed.timeConstant, 1e-9);
+		Assert.assertEquals(curve.churnExponent, parsed.churnExponent, 1e-9);
+		Assert.assertEquals(curve.churnConstant, parsed.churnConstant, 1e-9);
+	}
+
+	@Test
+	public void measureTest() {
+		Curve curve = ScalingSuite.measure(Allocator.PUSH_RELABEL,
+				Topology.SPARSE, 8, 32, 1, 0);
+		Assert.assertEquals(Allocator.PUSH_RELABEL, curve.allocator);
+		Assert.assertTrue(curve.timeConstant > 0);
+	}
+
+	@Test
+	public void measureTestThreads() {
+		// the instances are small, but are still solved with two threads
+		Curve curve = ScalingSuite.measure(Allocator.PUSH_RELABEL,
+				Topology.CHAIN, 8, 32, 1, 0, 2);
+		Assert.assertEquals(Allocator.PUSH_RELABEL, curve.allocator);
+		Assert.assertTrue(curve.timeConstant > 0);
+	}
+}